@@ -20,16 +20,17 @@ import android.app.Dialog;
 import android.content.Intent;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.media.AudioManager;
 import android.media.SoundPool;
 import android.media.SoundPool.OnLoadCompleteListener;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.provider.MediaStore;
 import android.support.v7.app.AppCompatActivity;
 import android.text.method.ScrollingMovementMethod;
+import android.util.Log;
 import android.view.Gravity;
 import android.view.View;
 import android.view.ViewGroup;
@@ -47,18 +48,34 @@ import com.github.jinatonic.confetti.ConfettiManager;
 import com.github.johnpersano.supertoasts.library.Style;
 import com.github.johnpersano.supertoasts.library.SuperActivityToast;
 import com.github.ybq.android.spinkit.SpinKitView;
+import com.iscookie.www.iscookie.activities.LiveClassifierActivity;
 import com.iscookie.www.iscookie.activities.helper.ConfettiActivity;
+import com.iscookie.www.iscookie.utils.BitmapPool;
+import com.iscookie.www.iscookie.utils.CaptureJob;
+import com.iscookie.www.iscookie.utils.ClassificationMetrics;
+import com.iscookie.www.iscookie.utils.ClassificationMetrics.Stage;
 import com.iscookie.www.iscookie.utils.ClassificationTaskResult;
 import com.iscookie.www.iscookie.utils.Classifier;
-import com.iscookie.www.iscookie.utils.Classifier.Recognition;
+import com.iscookie.www.iscookie.utils.DoubleBufferedPipeline;
 import com.iscookie.www.iscookie.utils.ImageUtils;
+import com.iscookie.www.iscookie.utils.InferenceAutotuner;
+import com.iscookie.www.iscookie.utils.InferenceTuning;
+import com.iscookie.www.iscookie.utils.JpegDecoder;
+import com.iscookie.www.iscookie.utils.RecognitionCache;
+import com.iscookie.www.iscookie.utils.RecognitionResults;
 import com.iscookie.www.iscookie.utils.Logger;
+import com.iscookie.www.iscookie.utils.ModelCache;
+import com.iscookie.www.iscookie.utils.ModelLifecycle;
+import com.iscookie.www.iscookie.utils.TargetDecision;
+import com.iscookie.www.iscookie.utils.TargetSpec;
 
 import java.io.IOException;
-import java.util.List;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
 
-import io.reactivex.Observable;
-import io.reactivex.schedulers.Schedulers;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.CompositeDisposable;
 import mehdi.sakout.fancybuttons.FancyButton;
 import timber.log.Timber;
 
@@ -67,21 +84,46 @@ public class MainActivity extends AppCompatActivity implements ConfettiActivity
     private static final Logger LOGGER = new Logger();
 
     // for custom model refer to: https://github.com/tensorflow/tensorflow/issues/2883
+    // Model input sizes come from the *_info.txt manifests in the assets, see ModelRegistry.
 
-    // Values for google's inception model (from the original paper findings).
-    private static final int INPUT_SIZE = 224;
+    public static final float CONFIDENCE_THRESHOLD = .3f;
 
-    // Default parameters.
-    private Classifier.Model model = Classifier.Model.QUANTIZED;
-    private Classifier.Device device = Classifier.Device.CPU;
-    private int numThreads = 1;
+    // Labels whose summed probability above CONFIDENCE_THRESHOLD means the picture shows the target item.
+    public static final String TARGET_LABELS_PATH = "target_labels.txt";
 
-    private static final float CONFIDENCE_THRESHOLD = .3f;
+    // Repeated taps on the same scene reuse recent results instead of running inference again.
+    private static final int RESULT_CACHE_SIZE = 8;
+    private static final int RESULT_CACHE_MAX_HASH_DISTANCE = 5;
+    private static final long RESULT_CACHE_TTL_MS = 30000;
 
-    private static Classifier classifier; // Tensorflow classifier.
+    // Loads and warms up the Tensorflow classifier, capture requests wait on its readiness.
+    private static ModelLifecycle modelLifecycle;
+
+    // Pending readiness subscriptions of this activity instance.
+    private final CompositeDisposable disposables = new CompositeDisposable();
+
+    // Classification tasks still running on the classifier; only touched on the main thread.
+    private final Set<ClassifyImageTask> runningTasks = new HashSet<>();
 
     private static Bitmap lastScreenShot;
 
+    // Decode and result bitmaps of past captures, reused by later ones instead of allocating.
+    private static final long BITMAP_POOL_BYTES = 4 * 1024 * 1024;
+    private static final BitmapPool bitmapPool = new BitmapPool(BITMAP_POOL_BYTES);
+
+    // Used by the prepare stage of the capture pipeline only, so it decodes into pooled bitmaps.
+    private final JpegDecoder jpegDecoder = new JpegDecoder(bitmapPool);
+
+    // Captures that may wait for the pipeline while it decodes and classifies earlier ones.
+    private static final int PIPELINE_CAPACITY = 4;
+
+    // Decodes the next capture while the classifier runs on the previous one; created once the
+    // classifier is ready and closed before it is released.
+    private DoubleBufferedPipeline<CaptureJob, ?, RecognitionResults> capturePipeline;
+
+    // The capture shown in the result view, returned to the pool once it is replaced.
+    private Bitmap displayedBitmap;
+
     // Main layout views.
     private ViewGroup mainContainer;
     private LinearLayout resultLayout;
@@ -91,6 +133,7 @@ public class MainActivity extends AppCompatActivity implements ConfettiActivity
     private TextView textViewResult;
     private Button btnDetectObject;
     private Button btnToggleCamera;
+    private Button btnLiveMode;
     private SpinKitView loadingSpinner;
     private ImageView imageViewResult;
     private CameraKitView cameraKitView;
@@ -146,20 +189,39 @@ public class MainActivity extends AppCompatActivity implements ConfettiActivity
 
         btnToggleCamera = (Button) findViewById(R.id.btnToggleCamera);
         btnDetectObject = (Button) findViewById(R.id.btnDetectObject);
+        btnLiveMode = (Button) findViewById(R.id.btnLiveMode);
         loadingSpinner = (SpinKitView) findViewById(R.id.loadingSpinner);
 
         btnDetectObject.setVisibility(View.GONE);
 
         btnToggleCamera.setOnClickListener(v -> cameraKitView.toggleFacing());
+        btnLiveMode.setOnClickListener(v -> startActivity(new Intent(this, LiveClassifierActivity.class)));
         // set default facing direction.
         cameraKitView.setFacing(CameraKit.FACING_BACK);
 
         btnDetectObject.setOnClickListener(v -> {
+            final long tapTime = SystemClock.elapsedRealtimeNanos();
             try {
                 cameraKitView.captureImage((cameraKitView, picture) -> {
                     showLoadingDialog();
-                    Timber.d("starting ClassifyImageTask with picture length " + picture.length);
-                    new ClassifyImageTask().execute(picture);
+                    // Wait for the classifier without blocking, it may still be loading.
+                    disposables.add(modelLifecycle.whenReady()
+                            .observeOn(AndroidSchedulers.mainThread())
+                            .subscribe(classifier -> {
+                                // Keeps the classifier leased until the task is done with it.
+                                if (!modelLifecycle.beginUse()) {
+                                    return;
+                                }
+                                if (capturePipeline == null) {
+                                    capturePipeline = classifier.newPipeline(jpegDecoder, PIPELINE_CAPACITY).start();
+                                }
+                                Timber.d("starting ClassifyImageTask with picture length " + picture.length);
+                                final ClassifyImageTask task = new ClassifyImageTask(capturePipeline, tapTime);
+                                runningTasks.add(task);
+                                // Tasks only wait for the pipeline, so they run side by side and
+                                // let it decode one capture while classifying another.
+                                task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, picture);
+                            }, this::onClassifierError));
                 });
             } catch (Exception e) {
                 makeToast(getString(R.string.camera_error));
@@ -185,16 +247,16 @@ public class MainActivity extends AppCompatActivity implements ConfettiActivity
         }
     }
 
-    private Recognition renderClassificationResultDisplay(final List<Recognition> results) {
-        textViewResult.setText(results.toString());
-        for (Recognition result : results) {
-            if (result.getConfidence() > CONFIDENCE_THRESHOLD) {
-                // Show positive message/overlay to the user.
-                makeToast(getString(R.string.target_item) + "!");
-                generateOnce().animate();
-                playSound(cheeringId);
-                return result;
-            }
+    private boolean renderClassificationResultDisplay(final RecognitionResults results) {
+        // The classifier already summed the target labels and compared them against CONFIDENCE_THRESHOLD.
+        final TargetDecision decision = results.getTargetDecision();
+        textViewResult.setText(decision + "\n" + results.toString());
+        if (decision.isTarget()) {
+            // Show positive message/overlay to the user.
+            makeToast(getString(R.string.target_item) + "!");
+            generateOnce().animate();
+            playSound(cheeringId);
+            return true;
         }
 
         if (results.isEmpty()) {
@@ -204,7 +266,7 @@ public class MainActivity extends AppCompatActivity implements ConfettiActivity
         }
         playSound(booId);
         // didn't successfully find the app object (current target: cookie).
-        return null;
+        return false;
     }
 
     @Override
@@ -222,15 +284,16 @@ public class MainActivity extends AppCompatActivity implements ConfettiActivity
     @Override
     protected void onResume() {
         super.onResume();
-        if (classifier == null) {
-            loadingSpinner.setVisibility(View.VISIBLE);
-            initTensorFlowAndLoadModel()
-                    .doOnComplete(() -> runOnUiThread(this::doneLoadingClassifier))
-                    .subscribeOn(Schedulers.io())
-                    .subscribe();
-        } else {
-            btnDetectObject.setVisibility(View.VISIBLE);
+        if (modelLifecycle == null) {
+            // Classifiers come from the process-wide cache, so a recreated activity reuses the
+            // interpreter of the previous one instead of loading the model again.
+            modelLifecycle = new ModelLifecycle(this::createClassifier, ModelLifecycle.DEFAULT_WARM_UP_RUNS,
+                    ModelCache.get(this)::release).start();
         }
+        loadingSpinner.setVisibility(View.VISIBLE);
+        disposables.add(modelLifecycle.whenReady()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(classifier -> doneLoadingClassifier(), this::onClassifierError));
         cameraKitView.onResume();
     }
 
@@ -245,40 +308,77 @@ public class MainActivity extends AppCompatActivity implements ConfettiActivity
     protected void onDestroy() {
         super.onDestroy();
         hideLoadingDialog();
-        Observable.fromCallable(() -> {
-            if (classifier != null) {
-                classifier.close();
+        disposables.clear();
+        showResultBitmap(null);
+        // Cancelled tasks end their use of the classifier in onCancelled, once their background
+        // work has stopped; only then does the lifecycle give the classifier back to the cache.
+        for (final ClassifyImageTask task : runningTasks) {
+            task.cancel(true);
+        }
+        runningTasks.clear();
+        if (capturePipeline != null) {
+            // Waits for the capture in flight, the classifier must be idle before it is released.
+            try {
+                capturePipeline.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            return classifier;
-        })
-                .subscribeOn(Schedulers.io())
-                .subscribe();
+            LOGGER.d("Capture pipeline: %s", capturePipeline);
+            capturePipeline = null;
+        }
+        if (modelLifecycle != null) {
+            LOGGER.d("Releasing classifier.");
+            modelLifecycle.close();
+            modelLifecycle = null;
+        }
+    }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            // Pooled bitmaps are cheap to allocate again, unlike the model.
+            bitmapPool.clear();
+        }
     }
 
-    private Observable<Classifier> initTensorFlowAndLoadModel() {
-        return Observable.fromCallable(() -> {
-            if (classifier != null) {
-                LOGGER.d("Closing classifier.");
-                classifier.close();
-                classifier = null;
-            }
+    /** Shows {@code bitmap} in the result view and returns the previously shown one to the pool. */
+    private void showResultBitmap(final Bitmap bitmap) {
+        imageViewResult.setImageBitmap(bitmap);
+        if (displayedBitmap != null && displayedBitmap != bitmap) {
+            bitmapPool.put(displayedBitmap);
+        }
+        displayedBitmap = bitmap;
+    }
 
-            // Default to float model if quantized is not supported.
-            if (device == Classifier.Device.GPU && model == Classifier.Model.QUANTIZED) {
-                LOGGER.d("Creating float model: GPU doesn't support quantized models.");
-                model = Classifier.Model.FLOAT;
+    /** Acquires the classifier, called once by the {@link ModelLifecycle} on a background thread. */
+    private Classifier createClassifier() throws IOException {
+        // Benchmarks model, device and thread count on first launch and after updates, which
+        // makes that one cold load take a few seconds longer.
+        final InferenceAutotuner.Config config = InferenceTuning.tuneIfNeeded(this);
+        LOGGER.d("Creating classifier with tuned configuration %s", config);
+        final Classifier classifier = ModelCache.get(this).acquire(MainActivity.this);
+        try {
+            classifier.setConfidenceThreshold(CONFIDENCE_THRESHOLD);
+            try (InputStream targetLabels = getAssets().open(TARGET_LABELS_PATH)) {
+                classifier.setTargetSpec(TargetSpec.compile(
+                        classifier.getLabels(), TargetSpec.readTitles(targetLabels), CONFIDENCE_THRESHOLD));
             }
+            classifier.setResultCache(new RecognitionCache(
+                    RESULT_CACHE_SIZE, Classifier.MAX_RESULTS, RESULT_CACHE_MAX_HASH_DISTANCE, RESULT_CACHE_TTL_MS));
+        } catch (final IOException | RuntimeException e) {
+            // The lifecycle never gets this classifier, so it would never release it.
+            ModelCache.get(this).release(classifier);
+            throw e;
+        }
+        return classifier;
+    }
 
-            try {
-                LOGGER.d("Creating classifier (model=%s, device=%s, numThreads=%d)", model, device, numThreads);
-                classifier = Classifier.create(MainActivity.this, model, device, numThreads);
-                return classifier;
-            } catch (IOException e) {
-                LOGGER.e(e, "Failed to create classifier.");
-            }
-            return null;
-        });
+    private void onClassifierError(final Throwable throwable) {
+        LOGGER.e(throwable, "Failed to create classifier.");
+        hideLoadingDialog();
+        loadingSpinner.setVisibility(View.GONE);
+        makeToast(getString(R.string.classifier_error));
     }
 
     private void makeToast(final String msg) {
@@ -369,25 +469,45 @@ public class MainActivity extends AppCompatActivity implements ConfettiActivity
 
         private static final long MIN_TASK_TIME_MS = 3000;
 
+        private final DoubleBufferedPipeline<CaptureJob, ?, RecognitionResults> pipeline;
+        private final ModelLifecycle lifecycle = modelLifecycle;
+        private final ClassificationMetrics metrics = ClassificationMetrics.global();
+        private final long tapTime;
+
+        // Per task, so a later task can't refill the results this one is about to show.
+        private final RecognitionResults classificationResults = new RecognitionResults();
+
         private Bitmap scaledBitmap;
-        private List<Classifier.Recognition> results;
 
         private String errorMessage = null;
         private long taskTime;
 
+        ClassifyImageTask(final DoubleBufferedPipeline<CaptureJob, ?, RecognitionResults> pipeline,
+                          final long tapTime) {
+            this.pipeline = pipeline;
+            this.tapTime = tapTime;
+        }
+
         protected ClassificationTaskResult doInBackground(byte[]... pictures) {
             final long startTime = System.currentTimeMillis();
             final int count = pictures.length;
             Timber.d("ClassifyImageTask with " + count + " byte array params (should be 1)");
             final byte[] picture = pictures[0];
+            // The pipeline decodes only as much of the capture as the model needs, upright.
+            final CaptureJob job = new CaptureJob(picture, classificationResults);
             try {
-                Bitmap bitmap = BitmapFactory.decodeByteArray(picture, 0, picture.length);
-                scaledBitmap = Bitmap.createScaledBitmap(bitmap, INPUT_SIZE, INPUT_SIZE, false);
-                if (classifier == null || classifier.getInterpreter() == null) { // last minute init.
-                    initTensorFlowAndLoadModel().subscribe();
+                pipeline.submit(job);
+                job.await();
+                if (job.getInferenceMs() >= 0) {
+                    lifecycle.recordInference(job.getInferenceMs());
+                }
+                metrics.record(Stage.END_TO_END, SystemClock.elapsedRealtimeNanos() - tapTime);
+                if (LOGGER.isLoggable(Log.DEBUG)) {
+                    // Formatting the metrics on every tap isn't free, skip it unless it is logged.
+                    LOGGER.d("classification latencies:\n%s", metrics);
+                    LOGGER.d("classification results: %s, pipeline: %s, bitmap pool: %s",
+                            classificationResults, pipeline, bitmapPool);
                 }
-                results = classifier.recognizeImage(scaledBitmap);
-                Timber.d("classification results: " + results.toString());
             } catch (Exception e) {
                 Timber.e("error in classification task: " + e.toString());
                 if (e instanceof NullPointerException) {
@@ -396,6 +516,9 @@ public class MainActivity extends AppCompatActivity implements ConfettiActivity
                     errorMessage = e.toString() + ". If the error occurs again, please reopen the app.";
                 }
                 return ClassificationTaskResult.FAIL;
+            } finally {
+                // Set once decoded, even if classifying failed afterwards.
+                scaledBitmap = job.getBitmap();
             }
 
             taskTime = System.currentTimeMillis() - startTime;
@@ -430,8 +553,8 @@ public class MainActivity extends AppCompatActivity implements ConfettiActivity
                 case SUCCESS:
                     // We were able to successfully render a classification result on the taken image.
                     // If the foundResult is sufficiently confident, show success screen.
-                    final Recognition foundResult = renderClassificationResultDisplay(results);
-                    if (foundResult != null) {
+                    final boolean foundTarget = renderClassificationResultDisplay(classificationResults);
+                    if (foundTarget) {
                         shareButton.setBackgroundColor(getResources().getColor(R.color.md_green_500));
                         shareButton.setText(getString(R.string.share_success));
                         showResultToast(getString(R.string.target_item) + "!", R.color.md_green_500, R.drawable.check_mark_75);
@@ -441,12 +564,12 @@ public class MainActivity extends AppCompatActivity implements ConfettiActivity
                         showResultToast("Not a " + getString(R.string.target_item) + "!", R.color.md_red_500, R.drawable.x_mark_75);
                     }
                     resultLayout.setVisibility(View.VISIBLE);
-                    imageViewResult.setImageBitmap(scaledBitmap);
+                    showResultBitmap(scaledBitmap);
 
                     shareButton.setOnClickListener(v -> {
                         // Image description used for the social share message.
                         final String imageDescription;
-                        if (foundResult != null) {
+                        if (foundTarget) {
                             imageDescription = "Successful find!";
                         } else {
                             imageDescription = "I failed";
@@ -459,10 +582,28 @@ public class MainActivity extends AppCompatActivity implements ConfettiActivity
                     break;
                 case FAIL: // Software error - Unable to classify image.
                     resultLayout.setVisibility(View.GONE);
+                    showResultBitmap(null);
+                    bitmapPool.put(scaledBitmap);
                     makeToast(errorMessage);
                     break;
             }
             hideLoadingDialog();
+            endClassifierUse();
+        }
+
+        @Override
+        protected void onCancelled(final ClassificationTaskResult exitCode) {
+            // The activity is gone, nothing to show.
+            if (scaledBitmap != null) {
+                bitmapPool.put(scaledBitmap);
+            }
+            endClassifierUse();
+        }
+
+        /** Ends this task's use of the classifier, which may release it if the activity is gone. */
+        private void endClassifierUse() {
+            runningTasks.remove(this);
+            lifecycle.endUse();
         }
     }
 
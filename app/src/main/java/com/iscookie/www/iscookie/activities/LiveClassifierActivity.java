@@ -0,0 +1,306 @@
+package com.iscookie.www.iscookie.activities;
+
+import android.graphics.Color;
+import android.media.Image;
+import android.media.Image.Plane;
+import android.media.ImageReader;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Size;
+import android.util.TypedValue;
+import android.view.Surface;
+
+import com.iscookie.www.iscookie.MainActivity;
+import com.iscookie.www.iscookie.R;
+import com.iscookie.www.iscookie.activities.helper.CameraActivity;
+import com.iscookie.www.iscookie.utils.Classifier;
+import com.iscookie.www.iscookie.utils.Classifier.Model;
+import com.iscookie.www.iscookie.utils.Classifier.Recognition;
+import com.iscookie.www.iscookie.utils.FrameRateMeter;
+import com.iscookie.www.iscookie.utils.InferenceAutotuner;
+import com.iscookie.www.iscookie.utils.InferenceTuning;
+import com.iscookie.www.iscookie.utils.LabelTable;
+import com.iscookie.www.iscookie.utils.LatencyHistogram;
+import com.iscookie.www.iscookie.utils.ModelCache;
+import com.iscookie.www.iscookie.utils.ModelLifecycle;
+import com.iscookie.www.iscookie.utils.ModelRegistry;
+import com.iscookie.www.iscookie.utils.ModelSpec;
+import com.iscookie.www.iscookie.utils.RecognitionResults;
+import com.iscookie.www.iscookie.utils.TargetSpec;
+import com.iscookie.www.iscookie.utils.TemporalSmoother;
+import com.iscookie.www.iscookie.utils.TopKSelector;
+import com.iscookie.www.iscookie.utils.YuvTensorPacker;
+import com.iscookie.www.iscookie.views.BorderedText;
+import com.iscookie.www.iscookie.views.RecognitionScoreView;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.CompositeDisposable;
+import timber.log.Timber;
+
+/**
+ * Classifies camera preview frames continuously and overlays the results.
+ *
+ * <p>Frames come from the Camera2 {@link ImageReader} of the {@link
+ * com.iscookie.www.iscookie.fragments.CameraConnectionFragment}. The latest frame wins: while a
+ * frame is being classified, newly arriving frames are closed right away instead of queuing, so
+ * the results never lag behind the camera and the reader never runs out of images. Frames are
+ * requested at about the model input size and a {@link YuvTensorPacker} samples them straight into
+ * the input tensor, without intermediate ARGB frames or bitmaps. Live frames bypass the result
+ * cache. A {@link TemporalSmoother} averages the probabilities over recent frames. The results view
+ * shows the best smoothed scores and is only updated when the smoothed target decision changes, so
+ * a score hovering around the threshold doesn't make the overlay flicker. The achieved frame rate and the share of dropped frames are
+ * drawn over the preview, refreshed about once a second, and logged.
+ */
+public class LiveClassifierActivity extends CameraActivity {
+
+    private static final Size DESIRED_PREVIEW_SIZE = new Size(640, 480);
+    private static final boolean MAINTAIN_ASPECT = true;
+    private static final float TEXT_SIZE_DIP = 10;
+    private static final int STATS_LOG_INTERVAL_FRAMES = 100;
+    private static final long STATS_REFRESH_INTERVAL_NANOS = 1000 * 1000 * 1000L;
+
+    // The smoothed target score has to fall this far below the confidence threshold to switch back.
+    private static final float EXIT_THRESHOLD_FRACTION = 0.8f;
+
+    private final CompositeDisposable disposables = new CompositeDisposable();
+    private final FrameRateMeter frameRateMeter = new FrameRateMeter();
+    private final LatencyHistogram frameLatency = new LatencyHistogram();
+    private final RecognitionResults results = new RecognitionResults();
+
+    /** Set while a frame is packed or classified; frames arriving meanwhile are dropped. */
+    private final AtomicBoolean processingFrame = new AtomicBoolean();
+
+    private ModelLifecycle modelLifecycle;
+    private volatile Classifier classifier;
+
+    private RecognitionScoreView resultsView;
+    private BorderedText borderedText;
+
+    private int previewWidth;
+    private int previewHeight;
+    private int sensorOrientation;
+    private volatile boolean frameSizeKnown;
+    private YuvTensorPacker tensorPacker;
+    private ByteBuffer input;
+
+    /** Only touched on the inference thread. */
+    private TemporalSmoother smoother;
+    private float[] probabilities;
+    private final TopKSelector smoothedTopK = new TopKSelector(Classifier.MAX_RESULTS);
+    private long lastRenderNanos;
+
+    @Override
+    protected void onCreate(final Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        modelLifecycle = new ModelLifecycle(this::createClassifier,
+                ModelLifecycle.DEFAULT_WARM_UP_RUNS, ModelCache.get(this)::release).start();
+        disposables.add(modelLifecycle.whenReady()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(ready -> classifier = ready,
+                        throwable -> Timber.e(throwable, "Failed to create classifier.")));
+    }
+
+    /**
+     * Leases a classifier of its own from the process-wide cache, called once by the {@link
+     * ModelLifecycle} on a background thread. It is configured like MainActivity's, but the
+     * lease is exclusive, so both activities never run or reconfigure the same interpreter.
+     */
+    private Classifier createClassifier() throws IOException {
+        // Tunes first if MainActivity hasn't yet, so both lease the same configuration.
+        final InferenceAutotuner.Config config = InferenceTuning.tuneIfNeeded(this);
+        Timber.d("Creating live classifier with tuned configuration %s", config);
+        final Classifier classifier = ModelCache.get(this).acquire(this);
+        try {
+            classifier.setConfidenceThreshold(MainActivity.CONFIDENCE_THRESHOLD);
+            try (InputStream targetLabels = getAssets().open(MainActivity.TARGET_LABELS_PATH)) {
+                classifier.setTargetSpec(TargetSpec.compile(classifier.getLabels(),
+                        TargetSpec.readTitles(targetLabels), MainActivity.CONFIDENCE_THRESHOLD));
+            }
+        } catch (final IOException | RuntimeException e) {
+            // The lifecycle never gets this classifier, so it would never release it.
+            ModelCache.get(this).release(classifier);
+            throw e;
+        }
+        return classifier;
+    }
+
+    @Override
+    public synchronized void onDestroy() {
+        disposables.clear();
+        classifier = null;
+        if (modelLifecycle != null) {
+            modelLifecycle.close();
+            modelLifecycle = null;
+        }
+        Timber.i("Live classification finished: %s, frame latency %s",
+                frameRateMeter, frameLatency.snapshot());
+        super.onDestroy();
+    }
+
+    @Override
+    public void onPreviewSizeChosen(final Size size, final int rotation) {
+        final float textSizePx = TypedValue.applyDimension(
+                TypedValue.COMPLEX_UNIT_DIP, TEXT_SIZE_DIP, getResources().getDisplayMetrics());
+        borderedText = new BorderedText(Color.WHITE, Color.BLACK, textSizePx);
+
+        resultsView = (RecognitionScoreView) findViewById(R.id.results);
+        previewWidth = size.getWidth();
+        previewHeight = size.getHeight();
+        sensorOrientation = rotation - getScreenOrientation();
+        Timber.i("Camera orientation relative to screen canvas: %d", sensorOrientation);
+
+        Timber.i("Initializing at size %dx%d", previewWidth, previewHeight);
+        frameSizeKnown = true;
+
+        addCallback(canvas -> borderedText.drawText(
+                canvas, 10, canvas.getHeight() - 10, frameRateMeter.toString()));
+    }
+
+    private int getScreenOrientation() {
+        switch (getWindowManager().getDefaultDisplay().getRotation()) {
+            case Surface.ROTATION_270:
+                return 270;
+            case Surface.ROTATION_180:
+                return 180;
+            case Surface.ROTATION_90:
+                return 90;
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public void onImageAvailable(final ImageReader reader) {
+        // Older frames still in the reader are stale, skip straight to the newest one.
+        final Image image = reader.acquireLatestImage();
+        if (image == null) {
+            return;
+        }
+        final Classifier classifier = this.classifier;
+        if (classifier == null || !frameSizeKnown) {
+            // Still loading the model; these frames are not part of the live statistics.
+            image.close();
+            return;
+        }
+        frameRateMeter.onFrameArrived();
+        if (!processingFrame.compareAndSet(false, true)) {
+            // Inference is busy with an earlier frame. Closing at once hands the buffer back to
+            // the camera instead of letting frames pile up behind the classifier.
+            image.close();
+            frameRateMeter.onFrameDropped();
+            return;
+        }
+        final long arrivalNanos = SystemClock.elapsedRealtimeNanos();
+
+        Trace.beginSection("packFrame");
+        try {
+            if (tensorPacker == null) {
+                tensorPacker = classifier.newYuvTensorPacker();
+                tensorPacker.configure(previewWidth, previewHeight, sensorOrientation, MAINTAIN_ASPECT);
+                input = tensorPacker.allocate();
+            }
+            // Samples the camera's plane buffers in place: convert, rotate, crop, scale and
+            // normalize happen in one pass straight into the input tensor.
+            final Plane[] planes = image.getPlanes();
+            tensorPacker.pack(
+                    planes[0].getBuffer(),
+                    planes[1].getBuffer(),
+                    planes[2].getBuffer(),
+                    planes[0].getRowStride(),
+                    planes[1].getRowStride(),
+                    planes[1].getPixelStride(),
+                    input);
+        } catch (final Exception e) {
+            Timber.e(e, "Failed to pack preview frame.");
+            processingFrame.set(false);
+            return;
+        } finally {
+            // The tensor is filled, the camera can have its buffer back.
+            image.close();
+            Trace.endSection();
+        }
+
+        runInBackground(() -> classifyFrame(classifier, arrivalNanos));
+    }
+
+    /** Classifies the packed frame on the inference thread. */
+    private void classifyFrame(final Classifier classifier, final long arrivalNanos) {
+        try {
+            if (smoother == null) {
+                final TargetSpec targetSpec = classifier.getTargetSpec();
+                smoother = new TemporalSmoother(classifier.getNumLabels(), targetSpec,
+                        EXIT_THRESHOLD_FRACTION * targetSpec.getThreshold(), TemporalSmoother.DEFAULT_ALPHA);
+                probabilities = new float[classifier.getNumLabels()];
+            }
+            classifier.recognizePacked(input, results);
+            classifier.copyProbabilities(probabilities);
+            final boolean changed = smoother.update(probabilities);
+            if (changed || smoother.getFrameCount() == 1) {
+                // Shows what the decision is based on rather than the scores of this single frame.
+                resultsView.setResults(getSmoothedResults(classifier));
+                Timber.d("Live decision: target=%b, smoothed score %.3f",
+                        smoother.isTarget(), smoother.getTargetScore());
+            }
+
+            final long now = SystemClock.elapsedRealtimeNanos();
+            frameLatency.recordNanos(now - arrivalNanos);
+            frameRateMeter.onFrameClassified(now);
+            if (frameRateMeter.getClassifiedCount() % STATS_LOG_INTERVAL_FRAMES == 0) {
+                Timber.d("Live classification: %s, frame latency %s, %d decision changes",
+                        frameRateMeter, frameLatency.snapshot(), smoother.getChangeCount());
+            }
+            if (changed || now - lastRenderNanos >= STATS_REFRESH_INTERVAL_NANOS) {
+                lastRenderNanos = now;
+                requestRender();
+            }
+        } finally {
+            processingFrame.set(false);
+        }
+    }
+
+    /** Returns the labels with the best smoothed probabilities, best first. */
+    private ArrayList<Recognition> getSmoothedResults(final Classifier classifier) {
+        smoothedTopK.reset();
+        for (int i = 0; i < probabilities.length; ++i) {
+            smoothedTopK.offer(i, smoother.getProbability(i));
+        }
+        final int count = smoothedTopK.finish();
+        final LabelTable labels = classifier.getLabels();
+        final ArrayList<Recognition> recognitions = new ArrayList<>(count);
+        for (int rank = 0; rank < count; ++rank) {
+            final int index = smoothedTopK.getIndex(rank);
+            recognitions.add(new Recognition(
+                    labels.getId(index), labels.getTitle(index), smoothedTopK.getScore(rank), null));
+        }
+        return recognitions;
+    }
+
+    @Override
+    protected int getLayoutId() {
+        return R.layout.fragment_camera_connection;
+    }
+
+    @Override
+    protected Size getDesiredPreviewFrameSize() {
+        return DESIRED_PREVIEW_SIZE;
+    }
+
+    @Override
+    protected Size getDesiredAnalysisFrameSize() {
+        try {
+            final ModelSpec spec = ModelRegistry.get(this)
+                    .getDefault(Model.valueOf(InferenceTuning.load(this).getModel()));
+            return new Size(spec.getInputWidth(), spec.getInputHeight());
+        } catch (final IOException e) {
+            Timber.w(e, "Could not read the model input size, analysing at preview size.");
+            return null;
+        }
+    }
+}
@@ -143,7 +143,8 @@ public abstract class CameraActivity extends AppCompatActivity implements OnImag
     }
 
     protected void setFragment() {
-        final Fragment fragment = CameraConnectionFragment.newInstance(getLayoutId(), getDesiredPreviewFrameSize());
+        final Fragment fragment = CameraConnectionFragment.newInstance(
+                getLayoutId(), getDesiredPreviewFrameSize(), getDesiredAnalysisFrameSize());
 
         getSupportFragmentManager()
                 .beginTransaction()
@@ -151,6 +152,11 @@ public abstract class CameraActivity extends AppCompatActivity implements OnImag
                 .commit();
     }
 
+    /**
+     * Copies the image planes into arrays. Prefer converting the plane buffers in place with
+     * {@link com.iscookie.www.iscookie.utils.ImageUtils#convertYUV420ToARGB8888(ByteBuffer,
+     * ByteBuffer, ByteBuffer, int, int, int, int, int, int[])}, which saves this copy per frame.
+     */
     protected void fillBytes(final Plane[] planes, final byte[][] yuvBytes) {
         // Because of the variable row stride it's not possible to know in
         // advance the actual necessary dimensions of the yuv planes.
@@ -196,9 +202,24 @@ public abstract class CameraActivity extends AppCompatActivity implements OnImag
         return super.onKeyDown(keyCode, event);
     }
 
+    /**
+     * Called once the camera is configured.
+     *
+     * @param size The size of the frames passed to {@link #onImageAvailable}.
+     * @param rotation The rotation of the camera sensor in degrees.
+     */
     public abstract void onPreviewSizeChosen(final android.util.Size size, final int rotation);
 
     protected abstract int getLayoutId();
 
     protected abstract Size getDesiredPreviewFrameSize();
+
+    /**
+     * Returns the smallest frame size the analysis needs, or null to analyse frames at preview size.
+     * A smaller size gets frames from a separate low-resolution stream while the preview keeps its
+     * quality.
+     */
+    protected Size getDesiredAnalysisFrameSize() {
+        return null;
+    }
 }
\ No newline at end of file
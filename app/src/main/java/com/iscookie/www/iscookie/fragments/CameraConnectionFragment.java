@@ -79,6 +79,12 @@ public class CameraConnectionFragment extends Fragment {
      */
     private static final int MINIMUM_PREVIEW_SIZE = 320;
 
+    /**
+     * How far the aspect ratio of the analysis frames may differ from the preview's, so that both
+     * streams show the same field of view.
+     */
+    private static final float ASPECT_RATIO_TOLERANCE = 0.05f;
+
     /**
      * Conversion from screen rotation to JPEG orientation.
      */
@@ -126,6 +132,10 @@ public class CameraConnectionFragment extends Fragment {
      */
     public interface ConnectionCallback {
 
+        /**
+         * @param size The size of the frames delivered to the image listener, which is smaller than
+         * the on-screen preview when an analysis size was requested.
+         */
         void onPreviewSizeChosen(Size size, int cameraRotation);
     }
 
@@ -159,6 +169,11 @@ public class CameraConnectionFragment extends Fragment {
      */
     private Size previewSize;
 
+    /**
+     * The {@link android.util.Size} of the frames delivered to the {@link #imageListener}.
+     */
+    private Size frameSize;
+
     /**
      * {@link android.hardware.camera2.CameraDevice.StateCallback}
      * is called when {@link CameraDevice} changes its state.
@@ -228,10 +243,16 @@ public class CameraConnectionFragment extends Fragment {
     private OnImageAvailableListener imageListener;
 
     /**
-     * The input size in pixels desired by TensorFlow (width and height of a square bitmap).
+     * The desired size of the on-screen preview.
      */
     private Size inputSize;
 
+    /**
+     * The smallest frame size the analysis needs, usually the model input, or null to analyse
+     * frames at preview size.
+     */
+    private Size analysisSize;
+
     /**
      * The layout identifier to inflate for this Fragment.
      */
@@ -305,10 +326,57 @@ public class CameraConnectionFragment extends Fragment {
         }
     }
 
+    /**
+     * Given {@code choices} of YUV output sizes, chooses the smallest one that has the aspect ratio
+     * of the preview and is at least {@code minSize} in either orientation. Analysis frames then
+     * cover the same field of view as the preview while needing only a fraction of its pixels.
+     *
+     * @return The chosen size, or {@code previewSize} if no size is both large enough and
+     * aspect-compatible
+     */
+    static Size chooseAnalysisSize(final Size[] choices, final Size previewSize, final Size minSize) {
+        final int minShortSide = Math.min(minSize.getWidth(), minSize.getHeight());
+        final int minLongSide = Math.max(minSize.getWidth(), minSize.getHeight());
+        final float previewAspect = (float) previewSize.getWidth() / previewSize.getHeight();
+
+        final List<Size> candidates = new ArrayList<Size>();
+        for (final Size option : choices) {
+            final float aspect = (float) option.getWidth() / option.getHeight();
+            if (Math.abs(aspect - previewAspect) <= ASPECT_RATIO_TOLERANCE * previewAspect
+                    && Math.min(option.getWidth(), option.getHeight()) >= minShortSide
+                    && Math.max(option.getWidth(), option.getHeight()) >= minLongSide) {
+                candidates.add(option);
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            Timber.w("No analysis size for " + minSize + " matches preview " + previewSize + ", using the preview size");
+            return previewSize;
+        }
+        final Size chosenSize = Collections.min(candidates, new CompareSizesByArea());
+        if (new CompareSizesByArea().compare(chosenSize, previewSize) > 0) {
+            // Never analyse more pixels than the preview has.
+            return previewSize;
+        }
+        Timber.i("Analysis size for model input " + minSize + ": " + chosenSize);
+        return chosenSize;
+    }
+
     public static CameraConnectionFragment newInstance(final int layout, final Size inputSize) {
+        return newInstance(layout, inputSize, null);
+    }
+
+    /**
+     * @param inputSize The desired size of the on-screen preview.
+     * @param analysisSize The smallest size of the frames delivered to the activity, or null to
+     * deliver frames at preview size.
+     */
+    public static CameraConnectionFragment newInstance(
+            final int layout, final Size inputSize, final Size analysisSize) {
         Bundle args = new Bundle();
         args.putInt("layout", layout);
         args.putSize("size", inputSize);
+        args.putSize("analysisSize", analysisSize);
 
         CameraConnectionFragment fragment = new CameraConnectionFragment();
         fragment.setArguments(args);
@@ -320,6 +388,7 @@ public class CameraConnectionFragment extends Fragment {
         final Bundle bundle = getArguments();
         this.layout = bundle.getInt("layout");
         this.inputSize = bundle.getSize("size");
+        this.analysisSize = bundle.getSize("analysisSize");
 
         return inflater.inflate(layout, container, false);
     }
@@ -332,6 +401,8 @@ public class CameraConnectionFragment extends Fragment {
     @Override
     public void onActivityCreated(final Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
+        // The hosting CameraActivity consumes the preview frames.
+        imageListener = (CameraActivity) getActivity();
     }
 
     @Override
@@ -398,6 +469,11 @@ public class CameraConnectionFragment extends Fragment {
                         inputSize.getWidth(),
                         inputSize.getHeight());
 
+                // Analysis gets its own, smaller stream so frames needn't be downscaled from preview size.
+                frameSize = analysisSize == null
+                        ? previewSize
+                        : chooseAnalysisSize(map.getOutputSizes(ImageFormat.YUV_420_888), previewSize, analysisSize);
+
                 // We fit the aspect ratio of TextureView to the size of preview we picked.
                 final int orientation = getResources().getConfiguration().orientation;
                 if (orientation == Configuration.ORIENTATION_LANDSCAPE) {
@@ -419,7 +495,7 @@ public class CameraConnectionFragment extends Fragment {
             throw new RuntimeException(getString(R.string.camera_unsupported));
         }
 
-        cameraConnectionCallback.onPreviewSizeChosen(previewSize, sensorOrientation);
+        cameraConnectionCallback.onPreviewSizeChosen(frameSize, sensorOrientation);
     }
 
     /**
@@ -562,12 +638,13 @@ public class CameraConnectionFragment extends Fragment {
             previewRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
             previewRequestBuilder.addTarget(surface);
 
-            Timber.i("Opening camera preview: " + previewSize.getWidth() + "x" + previewSize.getHeight());
+            Timber.i("Opening camera preview: " + previewSize.getWidth() + "x" + previewSize.getHeight()
+                    + ", analysis frames: " + frameSize.getWidth() + "x" + frameSize.getHeight());
 
-            // Create the reader for the preview frames.
+            // Create the reader for the analysis frames, which may be smaller than the preview.
             previewReader =
                     ImageReader.newInstance(
-                            previewSize.getWidth(), previewSize.getHeight(), ImageFormat.YUV_420_888, 2);
+                            frameSize.getWidth(), frameSize.getHeight(), ImageFormat.YUV_420_888, 2);
 
             previewReader.setOnImageAvailableListener(imageListener, backgroundHandler);
             previewRequestBuilder.addTarget(previewReader.getSurface());
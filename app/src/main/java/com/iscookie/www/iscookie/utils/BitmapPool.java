@@ -0,0 +1,160 @@
+package com.iscookie.www.iscookie.utils;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+
+/**
+ * Keeps mutable bitmaps that are no longer displayed so later decodes and scales can draw into
+ * them instead of allocating.
+ *
+ * <p>Bitmaps are matched by size and config: an exact match is preferred, otherwise any pooled
+ * bitmap of the same config that is large enough is reconfigured. The pool holds at most its byte
+ * budget and recycles the least recently returned bitmaps beyond it. Hit, miss and retained-byte
+ * counters show how much allocation it saves. Handed out bitmaps have undefined contents.
+ */
+public final class BitmapPool {
+
+  private final long maxBytes;
+
+  /** Pooled bitmaps, least recently returned first. */
+  private final ArrayList<Bitmap> bitmaps = new ArrayList<Bitmap>();
+
+  private long retainedBytes;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /** @param maxBytes The most bitmap memory the pool retains. */
+  public BitmapPool(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /** Returns a {@code width} x {@code height} bitmap, from the pool or newly allocated. */
+  public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+    final Bitmap bitmap = take(width, height, config);
+    if (bitmap == null) {
+      return Bitmap.createBitmap(width, height, config);
+    }
+    if (bitmap.getWidth() != width || bitmap.getHeight() != height) {
+      bitmap.reconfigure(width, height, config);
+    }
+    return bitmap;
+  }
+
+  /**
+   * Returns a pooled bitmap that can hold a {@code width} x {@code height} picture, for {@link
+   * android.graphics.BitmapFactory.Options#inBitmap}, or null if there is none.
+   */
+  public synchronized Bitmap getReusable(int width, int height, Bitmap.Config config) {
+    return take(width, height, config);
+  }
+
+  /** Removes the best fitting bitmap from the pool, counting a hit or a miss. */
+  private Bitmap take(int width, int height, Bitmap.Config config) {
+    final long needed = (long) width * height * getBytesPerPixel(config);
+    int best = -1;
+    for (int i = bitmaps.size() - 1; i >= 0; --i) {
+      final Bitmap candidate = bitmaps.get(i);
+      if (candidate.getConfig() != config || candidate.getAllocationByteCount() < needed) {
+        continue;
+      }
+      if (candidate.getWidth() == width && candidate.getHeight() == height) {
+        best = i;
+        break;
+      }
+      if (best < 0
+          || candidate.getAllocationByteCount() < bitmaps.get(best).getAllocationByteCount()) {
+        best = i;
+      }
+    }
+    if (best < 0) {
+      misses++;
+      return null;
+    }
+    hits++;
+    final Bitmap bitmap = bitmaps.remove(best);
+    retainedBytes -= bitmap.getAllocationByteCount();
+    return bitmap;
+  }
+
+  /**
+   * Returns a bitmap to the pool once nothing draws it anymore. Immutable, recycled and oversized
+   * bitmaps are not kept.
+   *
+   * @return Whether the pool kept the bitmap.
+   */
+  public synchronized boolean put(Bitmap bitmap) {
+    if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+      return false;
+    }
+    final int bytes = bitmap.getAllocationByteCount();
+    if (bytes > maxBytes) {
+      bitmap.recycle();
+      return false;
+    }
+    bitmaps.add(bitmap);
+    retainedBytes += bytes;
+    while (retainedBytes > maxBytes) {
+      final Bitmap oldest = bitmaps.remove(0);
+      retainedBytes -= oldest.getAllocationByteCount();
+      oldest.recycle();
+      evictions++;
+    }
+    return true;
+  }
+
+  /** Recycles all pooled bitmaps. */
+  public synchronized void clear() {
+    for (final Bitmap bitmap : bitmaps) {
+      bitmap.recycle();
+    }
+    evictions += bitmaps.size();
+    bitmaps.clear();
+    retainedBytes = 0;
+  }
+
+  private static int getBytesPerPixel(Bitmap.Config config) {
+    switch (config) {
+      case ALPHA_8:
+        return 1;
+      case RGB_565:
+      case ARGB_4444:
+        return 2;
+      default:
+        return 4;
+    }
+  }
+
+  /** Returns how many requests a pooled bitmap served. */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /** Returns how many requests found no fitting bitmap in the pool. */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  /** Returns how many bitmaps were recycled to stay within the budget or by {@link #clear()}. */
+  public synchronized long getEvictionCount() {
+    return evictions;
+  }
+
+  /** Returns the memory held by pooled bitmaps, in bytes. */
+  public synchronized long getRetainedBytes() {
+    return retainedBytes;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        "%d hits, %d misses, %d evictions, %d bitmaps retaining %.1f of %.1f MB",
+        hits,
+        misses,
+        evictions,
+        bitmaps.size(),
+        retainedBytes / (1024f * 1024f),
+        maxBytes / (1024f * 1024f));
+  }
+}
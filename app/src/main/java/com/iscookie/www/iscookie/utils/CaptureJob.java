@@ -0,0 +1,73 @@
+package com.iscookie.www.iscookie.utils;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A camera capture classified through {@link Classifier#newPipeline}. The prepare stage decodes the
+ * JPEG into {@link #getBitmap()}, the process stage fills {@link #getResults()}, and the submitting
+ * thread waits for both with {@link #await()}.
+ */
+public final class CaptureJob {
+
+  private final byte[] jpeg;
+  private final RecognitionResults results;
+  private final CountDownLatch done = new CountDownLatch(1);
+
+  private volatile Bitmap bitmap;
+  private volatile long inferenceMs = -1;
+  private volatile Exception error;
+
+  /** @param results Filled with the classification of {@code jpeg}. */
+  public CaptureJob(byte[] jpeg, RecognitionResults results) {
+    this.jpeg = jpeg;
+    this.results = results;
+  }
+
+  byte[] getJpeg() {
+    return jpeg;
+  }
+
+  void setBitmap(Bitmap bitmap) {
+    this.bitmap = bitmap;
+  }
+
+  void setInferenceMs(long inferenceMs) {
+    this.inferenceMs = inferenceMs;
+  }
+
+  void complete(Exception error) {
+    this.error = error;
+    done.countDown();
+  }
+
+  /**
+   * Waits until the capture is classified.
+   *
+   * @throws Exception The error that stopped decoding or classifying the capture.
+   */
+  public void await() throws Exception {
+    done.await();
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  /**
+   * Returns the capture scaled to the model input size, a pooled bitmap the caller owns once it is
+   * set, or null if decoding didn't get that far. Classifying may still have failed.
+   */
+  public Bitmap getBitmap() {
+    return bitmap;
+  }
+
+  public RecognitionResults getResults() {
+    return results;
+  }
+
+  /** Returns how long inference took in milliseconds, or -1 if the result cache answered. */
+  public long getInferenceMs() {
+    return inferenceMs;
+  }
+}
@@ -0,0 +1,218 @@
+package com.iscookie.www.iscookie.utils;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import com.iscookie.www.iscookie.utils.Classifier.Device;
+import com.iscookie.www.iscookie.utils.Classifier.Model;
+
+import java.io.IOException;
+
+/**
+ * Answers the target question with a quantized model first and asks the float model only when
+ * the quantized answer is borderline.
+ *
+ * <p>Every frame runs through the fast classifier. If its target score lands inside the ambiguity
+ * band, the same pixels are packed into the float layout and run through the accurate classifier,
+ * whose decision wins. Bitmaps are read once; the float conversion only happens for escalated
+ * frames. If the models differ in input size, escalated frames are scaled into one reused bitmap. The cascade counts escalations and the time spent in each stage. Like {@link
+ * Classifier}, it is not thread safe.
+ */
+public final class CascadeClassifier {
+  private static final Logger LOGGER = new Logger();
+
+  private final Classifier fast;
+  private final Classifier accurate;
+  private final boolean sameInputSize;
+
+  /** Escalated frames scaled to the accurate model's input size; created on first use. */
+  private Bitmap accurateInput;
+  private Canvas accurateCanvas;
+  private final Rect accurateBounds;
+  // SRC replaces the previous frame's pixels instead of blending over them.
+  private final Paint scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+  private float bandLow;
+  private float bandHigh;
+
+  private long frames;
+  private long escalations;
+  private long fastNanos;
+  private long accurateNanos;
+  private long lastLatencyNanos;
+  private boolean lastEscalated;
+
+  /**
+   * Creates a cascade of the largest bundled quantized and float models. The quantized model always
+   * runs on the CPU since the GPU delegate doesn't support it.
+   *
+   * @param targetSpec The target both models decide on.
+   * @param bandLow The lowest fast-model target score that is escalated.
+   * @param bandHigh The highest fast-model target score that is escalated.
+   */
+  public static CascadeClassifier create(
+      Activity activity,
+      Device accurateDevice,
+      int numThreads,
+      TargetSpec targetSpec,
+      float bandLow,
+      float bandHigh)
+      throws IOException {
+    final Classifier fast = Classifier.create(activity, Model.QUANTIZED, Device.CPU, numThreads);
+    final Classifier accurate;
+    try {
+      accurate = Classifier.create(activity, Model.FLOAT, accurateDevice, numThreads);
+    } catch (IOException | RuntimeException e) {
+      fast.close();
+      throw e;
+    }
+    fast.setTargetSpec(targetSpec);
+    accurate.setTargetSpec(targetSpec);
+    return new CascadeClassifier(fast, accurate, bandLow, bandHigh);
+  }
+
+  /**
+   * @param fast Runs every frame; needs a {@link TargetSpec}.
+   * @param accurate Runs ambiguous frames; needs a {@link TargetSpec} over the same labels.
+   */
+  public CascadeClassifier(Classifier fast, Classifier accurate, float bandLow, float bandHigh) {
+    this.fast = fast;
+    this.accurate = accurate;
+    sameInputSize =
+        fast.getImageSizeX() == accurate.getImageSizeX()
+            && fast.getImageSizeY() == accurate.getImageSizeY();
+    accurateBounds = new Rect(0, 0, accurate.getImageSizeX(), accurate.getImageSizeY());
+    scalePaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    setAmbiguityBand(bandLow, bandHigh);
+  }
+
+  /**
+   * Sets the fast-model target scores that count as ambiguous: scores in [{@code low}, {@code
+   * high}] are escalated to the accurate model. An empty band never escalates.
+   */
+  public void setAmbiguityBand(float low, float high) {
+    if (low > high) {
+      throw new IllegalArgumentException("Band " + low + ".." + high + " is inverted.");
+    }
+    bandLow = low;
+    bandHigh = high;
+  }
+
+  public float getBandLow() {
+    return bandLow;
+  }
+
+  public float getBandHigh() {
+    return bandHigh;
+  }
+
+  /**
+   * Decides whether {@code bitmap}, scaled to the fast classifier's input size, shows the target.
+   */
+  public TargetDecision decide(final Bitmap bitmap) {
+    Trace.beginSection("cascadeDecide");
+    final long startTime = SystemClock.elapsedRealtimeNanos();
+    final int[] pixels = fast.readPixels(bitmap);
+    // Sum up to the top of the band, not just the threshold, so clear hits aren't escalated.
+    TargetDecision decision = fast.decide(pixels, bandHigh);
+    final long fastDone = SystemClock.elapsedRealtimeNanos();
+    fastNanos += fastDone - startTime;
+
+    lastEscalated = decision.getScore() >= bandLow && decision.getScore() <= bandHigh;
+    if (lastEscalated) {
+      Trace.beginSection("escalate");
+      if (sameInputSize) {
+        // Stopping at the threshold is enough for the final answer.
+        decision = accurate.decide(pixels, 0);
+      } else {
+        decision = accurate.decide(scaleForAccurate(bitmap));
+      }
+      Trace.endSection();
+      accurateNanos += SystemClock.elapsedRealtimeNanos() - fastDone;
+      escalations++;
+    }
+    frames++;
+    lastLatencyNanos = SystemClock.elapsedRealtimeNanos() - startTime;
+    Trace.endSection();
+    LOGGER.v(
+        "Cascade decided %s in %d us%s",
+        decision, lastLatencyNanos / 1000, lastEscalated ? " (escalated)" : "");
+    return decision;
+  }
+
+  /** Draws {@code bitmap} scaled into the reused input bitmap of the accurate model. */
+  private Bitmap scaleForAccurate(final Bitmap bitmap) {
+    if (accurateInput == null) {
+      accurateInput =
+          Bitmap.createBitmap(
+              accurateBounds.width(), accurateBounds.height(), Bitmap.Config.ARGB_8888);
+      accurateCanvas = new Canvas(accurateInput);
+    }
+    accurateCanvas.drawBitmap(bitmap, null, accurateBounds, scalePaint);
+    return accurateInput;
+  }
+
+  /** Whether the last decision came from the accurate model. */
+  public boolean wasLastEscalated() {
+    return lastEscalated;
+  }
+
+  /** Returns the total latency of the last decision, in nanoseconds. */
+  public long getLastLatencyNanos() {
+    return lastLatencyNanos;
+  }
+
+  /** Returns the fraction of frames that were escalated, or 0 before the first frame. */
+  public float getEscalationRate() {
+    return frames == 0 ? 0 : (float) escalations / frames;
+  }
+
+  /** Returns the mean latency of both stages together per frame, in milliseconds. */
+  public float getAverageLatencyMs() {
+    return frames == 0 ? 0 : (fastNanos + accurateNanos) / 1e6f / frames;
+  }
+
+  /** Returns the mean latency of the fast stage per frame, in milliseconds. */
+  public float getAverageFastLatencyMs() {
+    return frames == 0 ? 0 : fastNanos / 1e6f / frames;
+  }
+
+  /** Returns the mean latency of the accurate stage per escalated frame, in milliseconds. */
+  public float getAverageAccurateLatencyMs() {
+    return escalations == 0 ? 0 : accurateNanos / 1e6f / escalations;
+  }
+
+  public long getFrameCount() {
+    return frames;
+  }
+
+  public long getEscalationCount() {
+    return escalations;
+  }
+
+  public Classifier getFastClassifier() {
+    return fast;
+  }
+
+  public Classifier getAccurateClassifier() {
+    return accurate;
+  }
+
+  /** Closes both classifiers. */
+  public void close() {
+    fast.close();
+    accurate.close();
+    if (accurateInput != null) {
+      accurateInput.recycle();
+      accurateInput = null;
+      accurateCanvas = null;
+    }
+  }
+}
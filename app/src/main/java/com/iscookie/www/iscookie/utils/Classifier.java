@@ -22,20 +22,21 @@ import android.graphics.RectF;
 import android.os.SystemClock;
 import android.os.Trace;
 
+import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
 import org.tensorflow.lite.gpu.GpuDelegate;
 
-import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
 
 /** A classifier specialized to label images using TensorFlow Lite. */
 public abstract class Classifier {
@@ -55,15 +56,24 @@ public abstract class Classifier {
   }
 
   /** Number of results to show in the UI. */
-  private static final int MAX_RESULTS = 3;
+  public static final int MAX_RESULTS = 3;
 
   /** Dimensions of inputs. */
   private static final int DIM_BATCH_SIZE = 1;
 
+  /** Score above which a result counts as confident until {@link #setConfidenceThreshold}. */
+  private static final float DEFAULT_CONFIDENCE_THRESHOLD = 0.5f;
+
+  /** Default number of images packed into one interpreter call by {@link #recognizeImages}. */
+  private static final int DEFAULT_MAX_BATCH_SIZE = 4;
+
   private static final int DIM_PIXEL_SIZE = 3;
 
+  /** The model's files, input shape and normalization. */
+  private final ModelSpec spec;
+
   /** Preallocated buffers for storing image data in. */
-  private final int[] intValues = new int[getImageSizeX() * getImageSizeY()];
+  private final int[] intValues;
 
   /** Options for configuring the Interpreter. */
   private final Interpreter.Options tfliteOptions = new Interpreter.Options();
@@ -71,8 +81,36 @@ public abstract class Classifier {
   /** The loaded TensorFlow Lite model. */
   private MappedByteBuffer tfliteModel;
 
-  /** Labels corresponding to the output of the vision model. */
-  private List<String> labels;
+  /** Labels corresponding to the output of the vision model, shared with other classifiers. */
+  private LabelTable labels;
+
+  /** Converts pixels into the input layout and normalization of the model. */
+  private PixelPacker pixelPacker;
+
+  /** Reusable selector for the best classifications. */
+  private final TopKSelector topResults = new TopKSelector(MAX_RESULTS);
+
+  /** Optional cache of recent results keyed by perceptual frame hashes. */
+  private RecognitionCache resultCache = null;
+
+  private final FrameHasher frameHasher = new FrameHasher();
+
+  /** Scratch arrays for handing the results of a frame to {@link #resultCache}. */
+  private final int[] cachedLabels = new int[MAX_RESULTS];
+
+  private final float[] cachedConfidences = new float[MAX_RESULTS];
+
+  /** Results scoring above this are reported as confident by {@link RecognitionResults}. */
+  private float confidenceThreshold = DEFAULT_CONFIDENCE_THRESHOLD;
+
+  /** Receives the latency of each stage of {@link #recognizeImage(Bitmap, RecognitionResults)}. */
+  private ClassificationMetrics metrics = ClassificationMetrics.global();
+
+  /** Optional set of labels {@link #decide()} aggregates into a target decision. */
+  private TargetSpec targetSpec = null;
+
+  /** Whether {@link #warmUp(int)} ran, so a reused classifier isn't warmed up twice. */
+  private boolean warm = false;
 
   /** Optional GPU delegate for accleration. */
   private GpuDelegate gpuDelegate = null;
@@ -83,6 +121,35 @@ public abstract class Classifier {
   /** A ByteBuffer to hold image data, to be feed into Tensorflow Lite as inputs. */
   protected ByteBuffer imgData = null;
 
+  /** Backing buffer for batched inputs, sized for {@link #maxBatchSize} images. */
+  private ByteBuffer batchImgData = null;
+
+  /** Largest number of images {@link #recognizeImages} runs in one interpreter call. */
+  private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+  /** The batch dimension the interpreter's input tensor is currently sized for. */
+  private int inputBatchSize = DIM_BATCH_SIZE;
+
+  /** Per batch size counters of batches run, images classified and time spent, for throughput. */
+  private long[] batchRuns = new long[DEFAULT_MAX_BATCH_SIZE + 1];
+  private long[] batchImages = new long[DEFAULT_MAX_BATCH_SIZE + 1];
+  private long[] batchNanos = new long[DEFAULT_MAX_BATCH_SIZE + 1];
+
+  /**
+   * Creates a classifier with the configuration {@link InferenceTuning} picked for this device, or
+   * with {@link InferenceTuning#DEFAULT_CONFIG} if the device hasn't been tuned yet.
+   *
+   * @param activity The current Activity.
+   */
+  public static Classifier create(Activity activity) throws IOException {
+    final InferenceAutotuner.Config config = InferenceTuning.load(activity);
+    return create(
+        activity,
+        Model.valueOf(config.getModel()),
+        Device.valueOf(config.getDevice()),
+        config.getNumThreads());
+  }
+
   /**
    * Creates a classifier with the provided configuration.
    *
@@ -94,10 +161,44 @@ public abstract class Classifier {
    */
   public static Classifier create(Activity activity, Model model, Device device, int numThreads)
       throws IOException {
-    if (model == Model.QUANTIZED) {
-      return new ClassifierQuantizedMobileNet(activity, device, numThreads);
+    return create(activity, model, device, numThreads, null);
+  }
+
+  /**
+   * Creates a classifier that runs on an already memory-mapped model, so several interpreters can
+   * share one mapping.
+   *
+   * @param sharedModel The model buffer of another classifier of the same {@code model}, or null to
+   *     map the model file.
+   */
+  static Classifier create(
+      Activity activity, Model model, Device device, int numThreads, MappedByteBuffer sharedModel)
+      throws IOException {
+    final ModelSpec spec = ModelRegistry.get(activity).getDefault(model);
+    return create(activity, spec, device, numThreads, sharedModel);
+  }
+
+  /**
+   * Creates a classifier for a registered model.
+   *
+   * @param spec A model of the {@link ModelRegistry}.
+   */
+  public static Classifier create(Activity activity, ModelSpec spec, Device device, int numThreads)
+      throws IOException {
+    return create(activity, spec, device, numThreads, null);
+  }
+
+  static Classifier create(
+      Activity activity,
+      ModelSpec spec,
+      Device device,
+      int numThreads,
+      MappedByteBuffer sharedModel)
+      throws IOException {
+    if (spec.isQuantized()) {
+      return new ClassifierQuantizedMobileNet(activity, spec, device, numThreads, sharedModel);
     } else {
-      return new ClassifierFloatMobileNet(activity, device, numThreads);
+      return new ClassifierFloatMobileNet(activity, spec, device, numThreads, sharedModel);
     }
   }
 
@@ -105,6 +206,25 @@ public abstract class Classifier {
     return tflite;
   }
 
+  /** Returns the memory-mapped model this classifier runs on, or null once closed. */
+  MappedByteBuffer getModelBuffer() {
+    return tfliteModel;
+  }
+
+  /** Returns the size of the direct buffers this classifier allocated, in bytes. */
+  public long getDirectBufferBytes() {
+    long bytes = imgData != null ? imgData.capacity() : 0;
+    if (batchImgData != null) {
+      bytes += batchImgData.capacity();
+    }
+    return bytes + getDirectOutputBytes();
+  }
+
+  /** Returns the size of direct output buffers a subclass allocated, in bytes. */
+  protected long getDirectOutputBytes() {
+    return 0;
+  }
+
   /** An immutable result returned by a Classifier describing what was recognized. */
   public static class Recognition {
     /**
@@ -175,9 +295,22 @@ public abstract class Classifier {
     }
   }
 
-  /** Initializes a {@code Classifier}. */
-  protected Classifier(Activity activity, Device device, int numThreads) throws IOException {
-    tfliteModel = loadModelFile(activity);
+  /**
+   * Initializes a {@code Classifier} for {@code spec} on {@code sharedModel}, or on a fresh mapping
+   * of the model file if it is null. Input and output buffers are always owned by this instance.
+   *
+   * @throws IOException if the model files can't be read or don't match {@code spec}.
+   */
+  protected Classifier(
+      Activity activity,
+      ModelSpec spec,
+      Device device,
+      int numThreads,
+      MappedByteBuffer sharedModel)
+      throws IOException {
+    this.spec = spec;
+    intValues = new int[getImageSizeX() * getImageSizeY()];
+    tfliteModel = sharedModel != null ? sharedModel : loadModelFile(activity);
     switch (device) {
       case NNAPI:
         tfliteOptions.setUseNNAPI(true);
@@ -192,28 +325,60 @@ public abstract class Classifier {
     tfliteOptions.setNumThreads(numThreads);
     tflite = new Interpreter(tfliteModel, tfliteOptions);
     labels = loadLabelList(activity);
-    imgData =
-        ByteBuffer.allocateDirect(
-            DIM_BATCH_SIZE
-                * getImageSizeX()
-                * getImageSizeY()
-                * DIM_PIXEL_SIZE
-                * getNumBytesPerChannel());
+    verifyTensors();
+    imgData = ByteBuffer.allocateDirect(DIM_BATCH_SIZE * getImageSizeInBytes());
     imgData.order(ByteOrder.nativeOrder());
-    LOGGER.d("Created a Tensorflow Lite Image Classifier.");
+    pixelPacker = createPixelPacker();
+    LOGGER.d("Created a Tensorflow Lite Image Classifier for %s.", spec);
+  }
+
+  private PixelPacker createPixelPacker() {
+    return spec.isQuantized()
+        ? PixelPacker.forUint8()
+        : PixelPacker.forFloat(getImageMean(), getImageStd());
   }
 
-  /** Reads label list from Assets. */
-  private List<String> loadLabelList(Activity activity) throws IOException {
-    List<String> labels = new ArrayList<String>();
-    BufferedReader reader =
-        new BufferedReader(new InputStreamReader(activity.getAssets().open(getLabelPath())));
-    String line;
-    while ((line = reader.readLine()) != null) {
-      labels.add(line);
+  /** Checks the model's tensors against the spec, so a wrong manifest fails here and not later. */
+  private void verifyTensors() throws IOException {
+    final Tensor input = tflite.getInputTensor(0);
+    final int[] inputShape = input.shape();
+    final DataType expectedType = spec.isQuantized() ? DataType.UINT8 : DataType.FLOAT32;
+    if (inputShape.length != 4
+        || inputShape[1] != getImageSizeY()
+        || inputShape[2] != getImageSizeX()
+        || inputShape[3] != DIM_PIXEL_SIZE
+        || input.dataType() != expectedType) {
+      throw new IOException(
+          String.format(
+              "Model %s has input %s of %s, its manifest says %dx%d of %s",
+              spec.getName(),
+              Arrays.toString(inputShape),
+              input.dataType(),
+              getImageSizeX(),
+              getImageSizeY(),
+              expectedType));
     }
-    reader.close();
-    return labels;
+    final int[] outputShape = tflite.getOutputTensor(0).shape();
+    if (outputShape[outputShape.length - 1] != labels.size()) {
+      throw new IOException(
+          String.format(
+              "Model %s has %d outputs but %s has %d labels",
+              spec.getName(),
+              outputShape[outputShape.length - 1],
+              spec.getLabelPath(),
+              labels.size()));
+    }
+  }
+
+  /** Returns the model this classifier runs. */
+  public ModelSpec getModelSpec() {
+    return spec;
+  }
+
+  /** Reads label list from Assets, or reuses it if another classifier already did. */
+  private LabelTable loadLabelList(final Activity activity) throws IOException {
+    final String labelPath = getLabelPath();
+    return LabelTable.getOrLoad(labelPath, () -> activity.getAssets().open(labelPath));
   }
 
   /** Memory-map the model file in Assets. */
@@ -226,66 +391,570 @@ public abstract class Classifier {
     return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
   }
 
-  /** Writes Image data into a {@code ByteBuffer}. */
-  private void convertBitmapToByteBuffer(Bitmap bitmap) {
-    if (imgData == null) {
-      return;
-    }
-    imgData.rewind();
+  /** Number of bytes one image occupies in the input tensor. */
+  private int getImageSizeInBytes() {
+    return getImageSizeX() * getImageSizeY() * DIM_PIXEL_SIZE * getNumBytesPerChannel();
+  }
+
+  /** Writes Image data into {@code buffer}, starting at its current position. */
+  private void convertBitmapToByteBuffer(Bitmap bitmap, ByteBuffer buffer) {
+    loadPixels(bitmap);
+    packPixels(buffer);
+  }
+
+  /** Reads the pixels of {@code bitmap} into {@link #intValues}. */
+  private void loadPixels(Bitmap bitmap) {
     bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
-    // Convert the image to floating point.
-    int pixel = 0;
-    long startTime = SystemClock.uptimeMillis();
-    for (int i = 0; i < getImageSizeX(); ++i) {
-      for (int j = 0; j < getImageSizeY(); ++j) {
-        final int val = intValues[pixel++];
-        addPixelValue(val);
-      }
-    }
-    long endTime = SystemClock.uptimeMillis();
-    LOGGER.v("Timecost to put values into ByteBuffer: " + (endTime - startTime));
+  }
+
+  /** Writes {@link #intValues} into {@code buffer}, starting at its current position. */
+  private void packPixels(ByteBuffer buffer) {
+    // Convert the whole image to the model's input layout in one pass.
+    pixelPacker.pack(intValues, intValues.length, buffer);
   }
 
   /** Runs inference and returns the classification results. */
   public List<Recognition> recognizeImage(final Bitmap bitmap) {
+    final RecognitionResults results = new RecognitionResults();
+    recognizeImage(bitmap, results);
+    return results.asList();
+  }
+
+  /**
+   * Runs inference and fills {@code results} with the best classifications, replacing whatever it
+   * held before. Only the winning labels are turned into {@link Recognition}s.
+   */
+  public void recognizeImage(final Bitmap bitmap, final RecognitionResults results) {
     // Log this method so that it can be analyzed with systrace.
     Trace.beginSection("recognizeImage");
 
     Trace.beginSection("preprocessBitmap");
-    convertBitmapToByteBuffer(bitmap);
+    final long loadStart = SystemClock.elapsedRealtimeNanos();
+    loadPixels(bitmap);
+    final long loadNanos = SystemClock.elapsedRealtimeNanos() - loadStart;
+    Trace.endSection();
+
+    long frameHash = 0;
+    if (resultCache != null) {
+      Trace.beginSection("lookupResultCache");
+      frameHash = frameHasher.hash(intValues, getImageSizeX(), getImageSizeY());
+      final int slot = resultCache.lookup(frameHash, SystemClock.uptimeMillis());
+      Trace.endSection();
+      if (slot >= 0) {
+        fillFromCache(slot, results);
+        Trace.endSection();
+        return;
+      }
+    }
+
+    Trace.beginSection("packPixels");
+    final long packStart = SystemClock.elapsedRealtimeNanos();
+    imgData.rewind();
+    packPixels(imgData);
+    final long inferenceStart = SystemClock.elapsedRealtimeNanos();
+    metrics.record(ClassificationMetrics.Stage.PACK, loadNanos + inferenceStart - packStart);
     Trace.endSection();
 
     // Run the inference call.
     Trace.beginSection("runInference");
-    long startTime = SystemClock.uptimeMillis();
-    runInference();
-    long endTime = SystemClock.uptimeMillis();
+    runBatch(imgData, DIM_BATCH_SIZE);
+    final long topKStart = SystemClock.elapsedRealtimeNanos();
+    metrics.record(ClassificationMetrics.Stage.INFERENCE, topKStart - inferenceStart);
     Trace.endSection();
-    LOGGER.v("Timecost to run model inference: " + (endTime - startTime));
 
     // Find the best classifications.
-    PriorityQueue<Recognition> pq =
-        new PriorityQueue<Recognition>(
-            3,
-                (lhs, rhs) -> {
-                  // Intentionally reversed to put high confidence at the head of the queue.
-                  return Float.compare(rhs.getConfidence(), lhs.getConfidence());
-                });
-    for (int i = 0; i < labels.size(); ++i) {
-      pq.add(
+    Trace.beginSection("selectTopResults");
+    selectTopResults(0, results);
+    Trace.endSection();
+
+    if (targetSpec != null) {
+      Trace.beginSection("decideTarget");
+      results.setTargetDecision(decide(0));
+      Trace.endSection();
+    }
+    metrics.record(
+        ClassificationMetrics.Stage.TOP_K, SystemClock.elapsedRealtimeNanos() - topKStart);
+
+    if (resultCache != null) {
+      storeInCache(frameHash, results);
+    }
+    Trace.endSection();
+  }
+
+  /**
+   * Runs inference and answers whether {@code bitmap} shows the target of the {@link TargetSpec},
+   * without ranking labels or building {@link Recognition}s. Bypasses the result cache.
+   */
+  public TargetDecision decide(final Bitmap bitmap) {
+    Trace.beginSection("decide");
+    final TargetDecision decision = decide(readPixels(bitmap), requireTargetSpec().getThreshold());
+    Trace.endSection();
+    return decision;
+  }
+
+  /**
+   * Answers whether the image of the last inference shows the target of the {@link TargetSpec}.
+   * Only the target labels are read, and reading stops once their summed score crosses the
+   * threshold. Frames answered from the result cache run no inference, use {@link
+   * RecognitionResults#getTargetDecision()} for those.
+   *
+   * @throws IllegalStateException if no target spec was set.
+   */
+  public TargetDecision decide() {
+    return decide(0);
+  }
+
+  /**
+   * Runs inference on {@code pixels}, an ARGB image of this classifier's input size, and answers
+   * the target question. Target scores are summed until they exceed {@code exitAbove}, which lets
+   * callers that care about more than the threshold read further.
+   */
+  TargetDecision decide(final int[] pixels, final float exitAbove) {
+    imgData.rewind();
+    pixelPacker.pack(pixels, getImageSizeX() * getImageSizeY(), imgData);
+    runBatch(imgData, DIM_BATCH_SIZE);
+    return decide(0, exitAbove);
+  }
+
+  /** Reads the pixels of {@code bitmap} and returns them; valid until the next image is read. */
+  int[] readPixels(final Bitmap bitmap) {
+    loadPixels(bitmap);
+    return intValues;
+  }
+
+  private TargetDecision decide(final int batchIndex) {
+    return decide(batchIndex, requireTargetSpec().getThreshold());
+  }
+
+  private TargetDecision decide(final int batchIndex, final float exitAbove) {
+    final float threshold = requireTargetSpec().getThreshold();
+    final float score =
+        sumTargetScore(batchIndex, targetSpec.getLabelIndices(), Math.max(threshold, exitAbove));
+    return new TargetDecision(score, score > threshold);
+  }
+
+  /**
+   * Sets the labels {@link #decide()} aggregates. While set, {@link #recognizeImage(Bitmap,
+   * RecognitionResults)} also reports the decision through {@link
+   * RecognitionResults#getTargetDecision()}. Pass null to turn target decisions off.
+   */
+  public void setTargetSpec(TargetSpec targetSpec) {
+    this.targetSpec = targetSpec;
+  }
+
+  public TargetSpec getTargetSpec() {
+    return targetSpec;
+  }
+
+  private TargetSpec requireTargetSpec() {
+    if (targetSpec == null) {
+      throw new IllegalStateException("No target spec set.");
+    }
+    return targetSpec;
+  }
+
+  /** Returns the labels of the model in output order. */
+  public LabelTable getLabels() {
+    return labels;
+  }
+
+  /** Records stage latencies into {@code metrics} rather than the global ones. */
+  public void setMetrics(ClassificationMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public ClassificationMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Puts a cache in front of {@link #recognizeImage(Bitmap, RecognitionResults)}: frames whose
+   * perceptual hash is close to a recently classified frame get that frame's results without
+   * running inference. Pass null to always run inference.
+   */
+  public void setResultCache(RecognitionCache resultCache) {
+    this.resultCache = resultCache;
+  }
+
+  public RecognitionCache getResultCache() {
+    return resultCache;
+  }
+
+  private void fillFromCache(int slot, RecognitionResults results) {
+    results.recycle();
+    final int count = resultCache.getResultCount(slot);
+    final int confidentCount = resultCache.getConfidentCount(slot);
+    for (int rank = 0; rank < count; ++rank) {
+      final int index = resultCache.getLabelIndex(slot, rank);
+      results.add(
           new Recognition(
-              "" + i,
-              labels.size() > i ? labels.get(i) : "unknown",
-              getNormalizedProbability(i),
-              null));
+              labels.getId(index),
+              labels.getTitle(index),
+              resultCache.getConfidence(slot, rank),
+              null),
+          rank < confidentCount);
     }
-    final ArrayList<Recognition> recognitions = new ArrayList<Recognition>();
-    int recognitionsSize = Math.min(pq.size(), MAX_RESULTS);
-    for (int i = 0; i < recognitionsSize; ++i) {
-      recognitions.add(pq.poll());
+    if (targetSpec != null) {
+      results.setTargetDecision(resultCache.getTargetDecision(slot));
     }
+  }
+
+  private void storeInCache(long frameHash, RecognitionResults results) {
+    final int count = results.size();
+    for (int rank = 0; rank < count; ++rank) {
+      cachedLabels[rank] = topResults.getIndex(rank);
+      cachedConfidences[rank] = results.get(rank).getConfidence();
+    }
+    resultCache.put(
+        frameHash,
+        SystemClock.uptimeMillis(),
+        count,
+        cachedLabels,
+        cachedConfidences,
+        results.getConfidentCount(),
+        results.getTargetDecision());
+  }
+
+  /**
+   * Returns a packer with its own scratch buffers that converts bitmaps into this classifier's
+   * input layout, for packing frames on another thread than the one running inference.
+   */
+  public InputPacker newInputPacker() {
+    return new InputPacker(getImageSizeX(), getImageSizeY(), createPixelPacker());
+  }
+
+  /**
+   * Returns a packer that turns YUV camera frames straight into this classifier's input layout,
+   * for {@link #recognizePacked}. Call {@link YuvTensorPacker#configure} with the frame geometry
+   * before packing.
+   */
+  public YuvTensorPacker newYuvTensorPacker() {
+    return new YuvTensorPacker(createPixelPacker(), getImageSizeX(), getImageSizeY());
+  }
+
+  /**
+   * Runs inference on an image packed by an {@link InputPacker} or a {@link YuvTensorPacker} and
+   * fills {@code results} like {@link #recognizeImage(Bitmap, RecognitionResults)}, without
+   * consulting the result cache.
+   */
+  public void recognizePacked(final ByteBuffer input, final RecognitionResults results) {
+    Trace.beginSection("recognizePacked");
+    input.rewind();
+    runBatch(input, DIM_BATCH_SIZE);
+    selectTopResults(0, results);
+    if (targetSpec != null) {
+      results.setTargetDecision(decide(0));
+    }
+    Trace.endSection();
+  }
+
+  /**
+   * Creates a pipeline that decodes, scales and packs the next capture on one thread while this
+   * classifier runs inference on the previous one on another. Each {@link CaptureJob} is completed
+   * once its results are filled or it failed. Captures are hashed while they are packed, so the
+   * result cache answers repeated scenes like in {@link #recognizeImage(Bitmap,
+   * RecognitionResults)}. Nothing else may use this classifier or {@code decoder} while the
+   * pipeline runs.
+   *
+   * @param inputCapacity How many captures may wait to be prepared.
+   */
+  public DoubleBufferedPipeline<CaptureJob, ?, RecognitionResults> newPipeline(
+      final JpegDecoder decoder, int inputCapacity) {
+    final InputPacker packer = newInputPacker();
+    final FrameHasher prepareHasher = new FrameHasher();
+    return new DoubleBufferedPipeline<CaptureJob, PackedCapture, RecognitionResults>(
+        new PackedCapture(packer.allocate()),
+        new PackedCapture(packer.allocate()),
+        (job, packed) -> {
+          final Bitmap bitmap = decoder.decode(job.getJpeg(), getImageSizeX(), getImageSizeY());
+          job.setBitmap(bitmap);
+          final long packStart = SystemClock.elapsedRealtimeNanos();
+          packer.pack(bitmap, packed.input);
+          packed.frameHash = resultCache != null ? packer.hashPacked(prepareHasher) : 0;
+          metrics.record(
+              ClassificationMetrics.Stage.PACK, SystemClock.elapsedRealtimeNanos() - packStart);
+          packed.job = job;
+        },
+        packed -> {
+          final CaptureJob job = packed.job;
+          packed.job = null;
+          recognizeCapture(packed, job);
+          return job.getResults();
+        },
+        new DoubleBufferedPipeline.Listener<CaptureJob, RecognitionResults>() {
+          @Override
+          public void onResult(CaptureJob job, RecognitionResults results) {
+            job.complete(null);
+          }
+
+          @Override
+          public void onError(CaptureJob job, Exception e) {
+            job.complete(e);
+          }
+        },
+        inputCapacity);
+  }
+
+  /** Answers {@code job} from the result cache, or runs inference on its packed capture. */
+  private void recognizeCapture(final PackedCapture packed, final CaptureJob job) {
+    final RecognitionResults results = job.getResults();
+    if (resultCache != null) {
+      final int slot = resultCache.lookup(packed.frameHash, SystemClock.uptimeMillis());
+      if (slot >= 0) {
+        fillFromCache(slot, results);
+        return;
+      }
+    }
+    final long inferenceStart = SystemClock.elapsedRealtimeNanos();
+    recognizePacked(packed.input, results);
+    final long inferenceNanos = SystemClock.elapsedRealtimeNanos() - inferenceStart;
+    metrics.record(ClassificationMetrics.Stage.INFERENCE, inferenceNanos);
+    job.setInferenceMs(TimeUnit.NANOSECONDS.toMillis(inferenceNanos));
+    if (resultCache != null) {
+      storeInCache(packed.frameHash, results);
+    }
+  }
+
+  /** A packed capture and its job, handed from the prepare to the process stage. */
+  private static final class PackedCapture {
+    final ByteBuffer input;
+    long frameHash;
+    CaptureJob job;
+
+    PackedCapture(ByteBuffer input) {
+      this.input = input;
+    }
+  }
+
+  /**
+   * Runs {@code runs} inferences on a synthetic mid-gray image so interpreter allocation, delegate
+   * compilation and cache warm-up are paid before the first real image is classified.
+   *
+   * @return The time spent in milliseconds.
+   */
+  public long warmUp(int runs) {
+    Trace.beginSection("warmUp");
+    final long startTime = SystemClock.uptimeMillis();
+    Arrays.fill(intValues, 0xff808080);
+    imgData.rewind();
+    pixelPacker.pack(intValues, intValues.length, imgData);
+    for (int i = 0; i < runs; ++i) {
+      runBatch(imgData, DIM_BATCH_SIZE);
+    }
+    final long elapsed = SystemClock.uptimeMillis() - startTime;
     Trace.endSection();
-    return recognitions;
+    LOGGER.v("Timecost to warm up with %d runs: %d", runs, elapsed);
+    warm = true;
+    return elapsed;
+  }
+
+  /** Whether the interpreter already ran {@link #warmUp(int)}. */
+  public boolean isWarm() {
+    return warm;
+  }
+
+  /**
+   * Classifies several images, running up to {@link #getMaxBatchSize()} of them through the
+   * interpreter in a single call, so the per-call dispatch cost is paid once per batch instead of
+   * once per image. The interpreter input is sized for a full batch; a trailing partial batch is
+   * padded with stale images whose results are ignored, instead of resizing the interpreter down
+   * and back up for the next call.
+   *
+   * @param bitmaps Images already scaled to {@link #getImageSizeX()} x {@link #getImageSizeY()}.
+   * @return The classification results of each image, in the order of {@code bitmaps}.
+   */
+  public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps) {
+    Trace.beginSection("recognizeImages");
+    final List<List<Recognition>> allResults = new ArrayList<List<Recognition>>(bitmaps.size());
+    for (int start = 0; start < bitmaps.size(); start += maxBatchSize) {
+      final int batchSize = Math.min(maxBatchSize, bitmaps.size() - start);
+      final ByteBuffer input = getBatchInput();
+
+      Trace.beginSection("preprocessBatch");
+      for (int i = 0; i < batchSize; ++i) {
+        convertBitmapToByteBuffer(bitmaps.get(start + i), input);
+      }
+      Trace.endSection();
+
+      Trace.beginSection("runBatchInference");
+      final long startTime = SystemClock.elapsedRealtimeNanos();
+      runBatch(input, maxBatchSize);
+      final long elapsed = SystemClock.elapsedRealtimeNanos() - startTime;
+      Trace.endSection();
+      recordBatch(batchSize, elapsed);
+
+      for (int i = 0; i < batchSize; ++i) {
+        final RecognitionResults results = new RecognitionResults();
+        selectTopResults(i, results);
+        allResults.add(results.asList());
+      }
+    }
+    Trace.endSection();
+    return allResults;
+  }
+
+  /** Returns the rewound input buffer for a full batch of {@link #maxBatchSize} images. */
+  private ByteBuffer getBatchInput() {
+    if (maxBatchSize == DIM_BATCH_SIZE) {
+      imgData.rewind();
+      return imgData;
+    }
+    if (batchImgData == null) {
+      batchImgData = ByteBuffer.allocateDirect(maxBatchSize * getImageSizeInBytes());
+      batchImgData.order(ByteOrder.nativeOrder());
+    }
+    batchImgData.rewind();
+    return batchImgData;
+  }
+
+  /**
+   * Resizes the interpreter input to {@code batchSize} images if needed and runs it. Only two
+   * shapes are used: single images and full batches of {@link #maxBatchSize}.
+   */
+  private void runBatch(ByteBuffer input, int batchSize) {
+    if (inputBatchSize != batchSize) {
+      tflite.resizeInput(
+          0, new int[] {batchSize, getImageSizeY(), getImageSizeX(), DIM_PIXEL_SIZE});
+      inputBatchSize = batchSize;
+    }
+    runInference(input, batchSize);
+  }
+
+  private void recordBatch(int batchSize, long nanos) {
+    batchRuns[batchSize]++;
+    batchImages[batchSize] += batchSize;
+    batchNanos[batchSize] += nanos;
+    LOGGER.v(
+        "Timecost to run batch of %d: %d ms (%.1f images/s)",
+        batchSize, nanos / 1000000, getImagesPerSecond(batchSize));
+  }
+
+  /**
+   * Sets the largest number of images {@link #recognizeImages} packs into one interpreter call.
+   * Larger batches amortize dispatch overhead but need a proportionally larger input buffer.
+   */
+  public void setMaxBatchSize(int maxBatchSize) {
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+    }
+    if (maxBatchSize == this.maxBatchSize) {
+      return;
+    }
+    this.maxBatchSize = maxBatchSize;
+    batchImgData = null;
+    batchRuns = new long[maxBatchSize + 1];
+    batchImages = new long[maxBatchSize + 1];
+    batchNanos = new long[maxBatchSize + 1];
+  }
+
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * Returns the measured inference throughput of batches of {@code batchSize} images, or 0 if no
+   * batch of that size has run since the batch size was last changed.
+   */
+  public float getImagesPerSecond(int batchSize) {
+    if (batchSize < 1 || batchSize >= batchNanos.length || batchNanos[batchSize] == 0) {
+      return 0;
+    }
+    return batchImages[batchSize] * 1e9f / batchNanos[batchSize];
+  }
+
+  /** Returns how many batches of {@code batchSize} images were run. */
+  public long getBatchCount(int batchSize) {
+    return batchSize < 1 || batchSize >= batchRuns.length ? 0 : batchRuns[batchSize];
+  }
+
+  /**
+   * Scans the output of image {@code batchIndex} of the last inference once and keeps only the best
+   * labels.
+   */
+  private void selectTopResults(final int batchIndex, final RecognitionResults results) {
+    results.recycle();
+    topResults.reset();
+    selectTopLabels(batchIndex, topResults);
+    final int count = topResults.finish();
+    for (int rank = 0; rank < count; ++rank) {
+      final int index = topResults.getIndex(rank);
+      results.add(
+          new Recognition(
+              labels.getId(index),
+              labels.getTitle(index),
+              getNormalizedProbability(batchIndex, index),
+              null),
+          isConfident(batchIndex, index, confidenceThreshold));
+    }
+  }
+
+  /**
+   * Offers every label of image {@code batchIndex} of the last inference to {@code selector}. The
+   * offered scores only need to rank labels; reported confidences come from
+   * getNormalizedProbability(batchIndex, labelIndex).
+   */
+  protected void selectTopLabels(int batchIndex, TopKSelector selector) {
+    final int numLabels = getNumLabels();
+    for (int i = 0; i < numLabels; ++i) {
+      selector.offer(i, getNormalizedProbability(batchIndex, i));
+    }
+  }
+
+  /**
+   * Whether the label scored above {@code threshold} for image {@code batchIndex} of the last
+   * inference.
+   */
+  protected boolean isConfident(int batchIndex, int labelIndex, float threshold) {
+    return getNormalizedProbability(batchIndex, labelIndex) > threshold;
+  }
+
+  /**
+   * Copies the normalized probability of every label of the last inference into {@code out}, which
+   * needs room for {@link #getNumLabels()} values.
+   */
+  public void copyProbabilities(float[] out) {
+    final int numLabels = getNumLabels();
+    for (int i = 0; i < numLabels; ++i) {
+      out[i] = getNormalizedProbability(0, i);
+    }
+  }
+
+  /**
+   * Sums the normalized probabilities of {@code labelIndices} for image {@code batchIndex} of the
+   * last inference, stopping as soon as the sum exceeds {@code threshold}.
+   */
+  protected float sumTargetScore(int batchIndex, int[] labelIndices, float threshold) {
+    float score = 0;
+    for (final int labelIndex : labelIndices) {
+      score += getNormalizedProbability(batchIndex, labelIndex);
+      if (score > threshold) {
+        break;
+      }
+    }
+    return score;
+  }
+
+  /**
+   * Sets the score a result has to exceed to be reported as confident by {@link
+   * RecognitionResults#getConfidentCount()}.
+   */
+  public void setConfidenceThreshold(float confidenceThreshold) {
+    this.confidenceThreshold = confidenceThreshold;
+  }
+
+  public float getConfidenceThreshold() {
+    return confidenceThreshold;
+  }
+
+  /**
+   * Restores the confidence threshold, target spec, result cache and metrics a new classifier
+   * starts with, so the next holder of a cached classifier doesn't inherit the previous one's.
+   */
+  public void resetSettings() {
+    confidenceThreshold = DEFAULT_CONFIDENCE_THRESHOLD;
+    targetSpec = null;
+    resultCache = null;
+    metrics = ClassificationMetrics.global();
   }
 
   /** Closes the interpreter and model to release resources. */
@@ -306,42 +975,65 @@ public abstract class Classifier {
    *
    * @return
    */
-  public abstract int getImageSizeX();
+  public int getImageSizeX() {
+    return spec.getInputWidth();
+  }
 
   /**
    * Get the image size along the y axis.
    *
    * @return
    */
-  public abstract int getImageSizeY();
+  public int getImageSizeY() {
+    return spec.getInputHeight();
+  }
 
   /**
    * Get the name of the model file stored in Assets.
    *
    * @return
    */
-  protected abstract String getModelPath();
+  protected String getModelPath() {
+    return spec.getModelPath();
+  }
 
   /**
    * Get the name of the label file stored in Assets.
    *
    * @return
    */
-  protected abstract String getLabelPath();
+  protected String getLabelPath() {
+    return spec.getLabelPath();
+  }
 
   /**
    * Get the number of bytes that is used to store a single color channel value.
    *
    * @return
    */
-  protected abstract int getNumBytesPerChannel();
+  protected int getNumBytesPerChannel() {
+    return spec.getDataType().getBytesPerChannel();
+  }
+
+  /**
+   * Get the per channel (red, green, blue) mean subtracted from float model inputs. Not used by
+   * quantized models, which take the raw channel values.
+   *
+   * @return
+   */
+  protected float[] getImageMean() {
+    return spec.getMean();
+  }
 
   /**
-   * Add pixelValue to byteBuffer.
+   * Get the per channel (red, green, blue) standard deviation float model inputs are divided by
+   * after subtracting the mean. Not used by quantized models.
    *
-   * @param pixelValue
+   * @return
    */
-  protected abstract void addPixelValue(int pixelValue);
+  protected float[] getImageStd() {
+    return spec.getStd();
+  }
 
   /**
    * Read the probability value for the specified label This is either the original value as it was
@@ -353,12 +1045,12 @@ public abstract class Classifier {
   protected abstract float getProbability(int labelIndex);
 
   /**
-   * Set the probability value for the specified label.
+   * Set the probability value for the specified label, in the same units getProbability() returns.
    *
    * @param labelIndex
    * @param value
    */
-  protected abstract void setProbability(int labelIndex, Number value);
+  protected abstract void setProbability(int labelIndex, float value);
 
   /**
    * Get the normalized probability value for the specified label. This is the final value as it
@@ -369,20 +1061,32 @@ public abstract class Classifier {
   protected abstract float getNormalizedProbability(int labelIndex);
 
   /**
-   * Run inference using the prepared input in {@link #imgData}. Afterwards, the result will be
-   * provided by getProbability().
+   * Get the normalized probability value for the specified label of image {@code batchIndex} of
+   * the last inference.
+   *
+   * @param batchIndex
+   * @param labelIndex
+   * @return
+   */
+  protected abstract float getNormalizedProbability(int batchIndex, int labelIndex);
+
+  /**
+   * Run inference on {@code batchSize} images prepared in {@code input}; the interpreter input has
+   * already been resized to match. {@code batchSize} is either 1 or {@link #getMaxBatchSize()}, so
+   * implementations can keep one output for each instead of reallocating. Afterwards, the results
+   * will be provided by getNormalizedProbability(batchIndex, labelIndex).
    *
    * <p>This additional method is necessary, because we don't have a common base for different
    * primitive data types.
    */
-  protected abstract void runInference();
+  protected abstract void runInference(ByteBuffer input, int batchSize);
 
   /**
    * Get the total number of labels.
    *
    * @return
    */
-  protected int getNumLabels() {
+  public int getNumLabels() {
     return labels.size();
   }
 }
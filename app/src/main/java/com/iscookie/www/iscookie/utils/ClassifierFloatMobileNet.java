@@ -18,8 +18,13 @@ package com.iscookie.www.iscookie.utils;
 import android.app.Activity;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 
-/** This TensorFlowLite classifier works with the float MobileNet model. */
+/**
+ * This TensorFlowLite classifier works with float MobileNet models; the {@link ModelSpec} supplies
+ * input size, files and normalization.
+ */
 public class ClassifierFloatMobileNet extends Classifier {
 
   /**
@@ -28,69 +33,76 @@ public class ClassifierFloatMobileNet extends Classifier {
    */
   private float[][] labelProbArray = null;
 
+  /** Output for full batches, one row per image, allocated on the first batch. */
+  private float[][] batchProbArray = null;
+
+  /** Output of the last inference: {@link #labelProbArray} or {@link #batchProbArray}. */
+  private float[][] outputArray = null;
+
   /**
-   * Initializes a {@code ClassifierFloatMobileNet}.
+   * Initializes a {@code ClassifierFloatMobileNet} for the largest bundled float model.
    *
    * @param activity
    */
   public ClassifierFloatMobileNet(Activity activity, Device device, int numThreads)
       throws IOException {
-    super(activity, device, numThreads);
-    labelProbArray = new float[1][getNumLabels()];
-  }
-
-  @Override
-  public int getImageSizeX() {
-    return 224;
+    this(
+        activity,
+        ModelRegistry.get(activity).getDefault(Model.FLOAT),
+        device,
+        numThreads,
+        null);
   }
 
-  @Override
-  public int getImageSizeY() {
-    return 224;
-  }
-
-  @Override
-  protected String getModelPath() {
-    // you can download this file from
-    // see build.gradle for where to obtain this file. It should be auto
-    // downloaded into assets.
-    return "mobilenet_v1_1.0_224.tflite";
-  }
-
-  @Override
-  protected String getLabelPath() {
-    return "labels.txt";
+  /** Initializes a {@code ClassifierFloatMobileNet} running on an already mapped model. */
+  ClassifierFloatMobileNet(
+      Activity activity,
+      ModelSpec spec,
+      Device device,
+      int numThreads,
+      MappedByteBuffer sharedModel)
+      throws IOException {
+    super(activity, spec, device, numThreads, sharedModel);
+    labelProbArray = new float[1][getNumLabels()];
+    outputArray = labelProbArray;
   }
 
   @Override
-  protected int getNumBytesPerChannel() {
-    return 4; // Float.SIZE / Byte.SIZE;
+  protected float getProbability(int labelIndex) {
+    return labelProbArray[0][labelIndex];
   }
 
   @Override
-  protected void addPixelValue(int pixelValue) {
-    imgData.putFloat(((pixelValue >> 16) & 0xFF) / 255.f);
-    imgData.putFloat(((pixelValue >> 8) & 0xFF) / 255.f);
-    imgData.putFloat((pixelValue & 0xFF) / 255.f);
+  protected void setProbability(int labelIndex, float value) {
+    labelProbArray[0][labelIndex] = value;
   }
 
   @Override
-  protected float getProbability(int labelIndex) {
+  protected float getNormalizedProbability(int labelIndex) {
     return labelProbArray[0][labelIndex];
   }
 
   @Override
-  protected void setProbability(int labelIndex, Number value) {
-    labelProbArray[0][labelIndex] = value.floatValue();
+  protected float getNormalizedProbability(int batchIndex, int labelIndex) {
+    return outputArray[batchIndex][labelIndex];
   }
 
   @Override
-  protected float getNormalizedProbability(int labelIndex) {
-    return labelProbArray[0][labelIndex];
+  public void copyProbabilities(float[] out) {
+    System.arraycopy(outputArray[0], 0, out, 0, getNumLabels());
   }
 
   @Override
-  protected void runInference() {
-    tflite.run(imgData, labelProbArray);
+  protected void runInference(ByteBuffer input, int batchSize) {
+    if (batchSize == 1) {
+      outputArray = labelProbArray;
+    } else {
+      if (batchProbArray == null || batchProbArray.length != batchSize) {
+        // Only when the maximum batch size changed.
+        batchProbArray = new float[batchSize][getNumLabels()];
+      }
+      outputArray = batchProbArray;
+    }
+    tflite.run(input, outputArray);
   }
 }
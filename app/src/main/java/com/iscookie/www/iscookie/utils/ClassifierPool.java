@@ -0,0 +1,196 @@
+package com.iscookie.www.iscookie.utils;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+
+import com.iscookie.www.iscookie.utils.Classifier.Recognition;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of classifiers that worker threads lease to classify concurrently.
+ *
+ * <p>A {@link Classifier} keeps its input and output buffers as instance state and is not thread
+ * safe. The pool creates several of them on a single memory-mapped model, so the weights are
+ * mapped once while every interpreter owns its own buffers and thread count. A thread {@link
+ * #acquire}s a classifier, uses it exclusively and {@link #release}s it afterwards.
+ */
+public final class ClassifierPool {
+  private static final Logger LOGGER = new Logger();
+
+  private final Classifier[] classifiers;
+  private final BlockingQueue<Classifier> idle;
+  private final AtomicInteger leased = new AtomicInteger();
+  private final AtomicInteger peakLeased = new AtomicInteger();
+
+  /** Guards {@link #leasedClassifiers} and orders {@link #release} against {@link #close}. */
+  private final Object lock = new Object();
+
+  private final Set<Classifier> leasedClassifiers =
+      Collections.newSetFromMap(new IdentityHashMap<Classifier, Boolean>());
+  private volatile boolean closed = false;
+
+  private ClassifierPool(Classifier[] classifiers) {
+    this.classifiers = classifiers;
+    this.idle = new ArrayBlockingQueue<Classifier>(classifiers.length);
+    for (final Classifier classifier : classifiers) {
+      idle.add(classifier);
+    }
+  }
+
+  /**
+   * Creates a pool of {@code size} classifiers sharing one mapping of the model.
+   *
+   * @param activity The current Activity.
+   * @param model The model to use for classification.
+   * @param device The device to use for classification.
+   * @param size The number of interpreters, usually the number of cores to spread work over.
+   * @param threadsPerInterpreter The number of threads each interpreter uses.
+   * @return A pool with all classifiers idle.
+   */
+  public static ClassifierPool create(
+      Activity activity,
+      Classifier.Model model,
+      Classifier.Device device,
+      int size,
+      int threadsPerInterpreter)
+      throws IOException {
+    if (size < 1) {
+      throw new IllegalArgumentException("Pool size must be positive: " + size);
+    }
+    final Classifier[] classifiers = new Classifier[size];
+    try {
+      classifiers[0] = Classifier.create(activity, model, device, threadsPerInterpreter);
+      for (int i = 1; i < size; ++i) {
+        classifiers[i] =
+            Classifier.create(
+                activity, model, device, threadsPerInterpreter, classifiers[0].getModelBuffer());
+      }
+    } catch (IOException | RuntimeException e) {
+      for (final Classifier classifier : classifiers) {
+        if (classifier != null) {
+          classifier.close();
+        }
+      }
+      throw e;
+    }
+    LOGGER.d(
+        "Created classifier pool (model=%s, device=%s, size=%d, threadsPerInterpreter=%d)",
+        model, device, size, threadsPerInterpreter);
+    return new ClassifierPool(classifiers);
+  }
+
+  /** Returns a pool size that leaves one core for the UI, at least 1. */
+  public static int defaultSize() {
+    return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+  }
+
+  /**
+   * Leases a classifier, waiting up to {@code timeout} for one to become idle.
+   *
+   * @return A classifier for exclusive use by the caller until {@link #release}d, or null if none
+   *     became idle in time.
+   */
+  public Classifier acquire(long timeout, TimeUnit unit) throws InterruptedException {
+    if (closed) {
+      throw new IllegalStateException("Classifier pool is closed.");
+    }
+    final Classifier classifier = idle.poll(timeout, unit);
+    if (classifier != null) {
+      synchronized (lock) {
+        leasedClassifiers.add(classifier);
+      }
+      final int inUse = leased.incrementAndGet();
+      int peak = peakLeased.get();
+      while (inUse > peak && !peakLeased.compareAndSet(peak, inUse)) {
+        peak = peakLeased.get();
+      }
+    }
+    return classifier;
+  }
+
+  /** Returns a classifier previously obtained from {@link #acquire}. */
+  public void release(Classifier classifier) {
+    if (!owns(classifier)) {
+      throw new IllegalArgumentException("Classifier does not belong to this pool.");
+    }
+    synchronized (lock) {
+      if (!leasedClassifiers.remove(classifier)) {
+        throw new IllegalStateException("Classifier released without being leased.");
+      }
+      leased.decrementAndGet();
+      // close() drains the queue under the same lock, so this classifier is either queued before
+      // the drain or closed here, never left idle in a closed pool.
+      if (closed) {
+        classifier.close();
+      } else {
+        idle.add(classifier);
+      }
+    }
+  }
+
+  /**
+   * Leases a classifier, classifies {@code bitmap} and releases it again.
+   *
+   * @throws TimeoutException If no classifier became idle within {@code timeout}.
+   */
+  public List<Recognition> recognizeImage(Bitmap bitmap, long timeout, TimeUnit unit)
+      throws InterruptedException, TimeoutException {
+    final Classifier classifier = acquire(timeout, unit);
+    if (classifier == null) {
+      throw new TimeoutException("No idle classifier after " + timeout + " " + unit);
+    }
+    try {
+      return classifier.recognizeImage(bitmap);
+    } finally {
+      release(classifier);
+    }
+  }
+
+  /** Returns the number of classifiers in the pool. */
+  public int getSize() {
+    return classifiers.length;
+  }
+
+  /** Returns the number of classifiers currently leased. */
+  public int getLeasedCount() {
+    return leased.get();
+  }
+
+  /** Returns the highest number of classifiers that were leased at the same time. */
+  public int getPeakLeasedCount() {
+    return peakLeased.get();
+  }
+
+  /**
+   * Closes all idle classifiers. Leased classifiers are closed as soon as they are released; no
+   * classifier can be acquired afterwards.
+   */
+  public void close() {
+    synchronized (lock) {
+      closed = true;
+      Classifier classifier;
+      while ((classifier = idle.poll()) != null) {
+        classifier.close();
+      }
+    }
+  }
+
+  private boolean owns(Classifier classifier) {
+    for (final Classifier candidate : classifiers) {
+      if (candidate == classifier) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -17,81 +17,182 @@ package com.iscookie.www.iscookie.utils;
 
 import android.app.Activity;
 
-import java.io.IOException;
+import org.tensorflow.lite.Tensor;
 
-/** This TensorFlow Lite classifier works with the quantized MobileNet model. */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+
+/**
+ * This TensorFlow Lite classifier works with quantized MobileNet models; the {@link ModelSpec}
+ * supplies input size and files, the output tensor its dequantization parameters.
+ */
 public class ClassifierQuantizedMobileNet extends Classifier {
 
   /**
-   * An array to hold inference results, to be feed into Tensorflow Lite as outputs. This isn't part
-   * of the super class, because we need a primitive array here.
+   * A direct buffer bound to the output tensor, holding one uint8 score per label and image. Labels
+   * are ranked and thresholded on these raw values; only winners get dequantized.
    */
-  private byte[][] labelProbArray = null;
+  private ByteBuffer outputBuffer = null;
+
+  /** The number of images {@link #outputBuffer} is sized for. */
+  private int outputBatchSize = 0;
+
+  /** A view of the first image's scores in {@link #outputBuffer}, for single-image inference. */
+  private ByteBuffer singleOutputBuffer = null;
+
+  /** Dequantization parameters of the output tensor: {@code real = scale * (raw - zeroPoint)}. */
+  private float outputScale;
+
+  private int outputZeroPoint;
+
+  /** The float threshold {@link #rawConfidenceThreshold} was computed for. */
+  private float cachedConfidenceThreshold = Float.NaN;
+
+  /** Smallest raw output value that dequantizes above {@link #cachedConfidenceThreshold}. */
+  private int rawConfidenceThreshold;
 
   /**
-   * Initializes a {@code ClassifierQuantizedMobileNet}.
+   * Initializes a {@code ClassifierQuantizedMobileNet} for the largest bundled quantized model.
    *
    * @param activity
    */
   public ClassifierQuantizedMobileNet(Activity activity, Device device, int numThreads)
       throws IOException {
-    super(activity, device, numThreads);
-    labelProbArray = new byte[1][getNumLabels()];
+    this(
+        activity,
+        ModelRegistry.get(activity).getDefault(Model.QUANTIZED),
+        device,
+        numThreads,
+        null);
+  }
+
+  /** Initializes a {@code ClassifierQuantizedMobileNet} running on an already mapped model. */
+  ClassifierQuantizedMobileNet(
+      Activity activity,
+      ModelSpec spec,
+      Device device,
+      int numThreads,
+      MappedByteBuffer sharedModel)
+      throws IOException {
+    super(activity, spec, device, numThreads, sharedModel);
+    final Tensor.QuantizationParams params = tflite.getOutputTensor(0).quantizationParams();
+    if (params.getScale() > 0) {
+      outputScale = params.getScale();
+      outputZeroPoint = params.getZeroPoint();
+    } else {
+      // Models converted without output quantization info map 0..255 onto 0..1.
+      outputScale = 1.0f / 255.0f;
+      outputZeroPoint = 0;
+    }
+    ensureOutputCapacity(getMaxBatchSize());
   }
 
   @Override
-  public int getImageSizeX() {
-    return 224;
+  protected float getProbability(int labelIndex) {
+    return getRawValue(0, labelIndex);
   }
 
   @Override
-  public int getImageSizeY() {
-    return 224;
+  protected void setProbability(int labelIndex, float value) {
+    outputBuffer.put(labelIndex, (byte) value);
   }
 
   @Override
-  protected String getModelPath() {
-    // you can download this file from
-    // see build.gradle for where to obtain this file. It should be auto
-    // downloaded into assets.
-    return "mobilenet_v1_1.0_224_quant.tflite";
+  protected float getNormalizedProbability(int labelIndex) {
+    return getNormalizedProbability(0, labelIndex);
   }
 
   @Override
-  protected String getLabelPath() {
-    return "labels.txt";
+  protected float getNormalizedProbability(int batchIndex, int labelIndex) {
+    return outputScale * (getRawValue(batchIndex, labelIndex) - outputZeroPoint);
   }
 
   @Override
-  protected int getNumBytesPerChannel() {
-    // the quantized model uses a single byte only
-    return 1;
+  protected void selectTopLabels(int batchIndex, TopKSelector selector) {
+    // Rank on the raw uint8 values; a label only reaches the heap if it beats the current K-th best.
+    final ByteBuffer output = outputBuffer;
+    final int numLabels = getNumLabels();
+    final int offset = batchIndex * numLabels;
+    int floor = -1;
+    for (int i = 0; i < numLabels; ++i) {
+      final int value = output.get(offset + i) & 0xff;
+      if (value > floor) {
+        selector.offer(i, value);
+        if (selector.size() == selector.capacity()) {
+          floor = (int) selector.threshold();
+        }
+      }
+    }
   }
 
   @Override
-  protected void addPixelValue(int pixelValue) {
-    imgData.put((byte) ((pixelValue >> 16) & 0xFF));
-    imgData.put((byte) ((pixelValue >> 8) & 0xFF));
-    imgData.put((byte) (pixelValue & 0xFF));
+  protected boolean isConfident(int batchIndex, int labelIndex, float threshold) {
+    if (threshold != cachedConfidenceThreshold) {
+      // real > threshold  <=>  raw > threshold / scale + zeroPoint
+      rawConfidenceThreshold = (int) Math.floor(threshold / outputScale + outputZeroPoint) + 1;
+      cachedConfidenceThreshold = threshold;
+    }
+    return getRawValue(batchIndex, labelIndex) >= rawConfidenceThreshold;
   }
 
   @Override
-  protected float getProbability(int labelIndex) {
-    return labelProbArray[0][labelIndex];
+  public void copyProbabilities(float[] out) {
+    final ByteBuffer output = outputBuffer;
+    final int numLabels = getNumLabels();
+    for (int i = 0; i < numLabels; ++i) {
+      out[i] = outputScale * ((output.get(i) & 0xff) - outputZeroPoint);
+    }
   }
 
   @Override
-  protected void setProbability(int labelIndex, Number value) {
-    labelProbArray[0][labelIndex] = value.byteValue();
+  protected float sumTargetScore(int batchIndex, int[] labelIndices, float threshold) {
+    // Sum in the raw domain; the dequantized sum exceeds threshold once the raw sum reaches
+    // floor(threshold / scale) + 1.
+    final int rawThreshold = (int) Math.floor(threshold / outputScale) + 1;
+    int rawScore = 0;
+    for (final int labelIndex : labelIndices) {
+      rawScore += getRawValue(batchIndex, labelIndex) - outputZeroPoint;
+      if (rawScore >= rawThreshold) {
+        break;
+      }
+    }
+    return outputScale * rawScore;
   }
 
   @Override
-  protected float getNormalizedProbability(int labelIndex) {
-    return (labelProbArray[0][labelIndex] & 0xff) / 255.0f;
+  protected void runInference(ByteBuffer input, int batchSize) {
+    // Both views share memory, so results are read from outputBuffer either way.
+    final ByteBuffer output;
+    if (batchSize == 1) {
+      output = singleOutputBuffer;
+    } else {
+      ensureOutputCapacity(batchSize);
+      output = outputBuffer;
+    }
+    output.rewind();
+    tflite.run(input, output);
   }
 
   @Override
-  protected void runInference() {
-    tflite.run(imgData, labelProbArray);
+  protected long getDirectOutputBytes() {
+    return outputBuffer != null ? outputBuffer.capacity() : 0;
+  }
+
+  private int getRawValue(int batchIndex, int labelIndex) {
+    return outputBuffer.get(batchIndex * getNumLabels() + labelIndex) & 0xff;
+  }
+
+  /** Reallocates the output only when the maximum batch size changed. */
+  private void ensureOutputCapacity(int batchSize) {
+    if (outputBatchSize != batchSize) {
+      outputBuffer = ByteBuffer.allocateDirect(batchSize * getNumLabels());
+      outputBuffer.order(ByteOrder.nativeOrder());
+      outputBuffer.limit(getNumLabels());
+      singleOutputBuffer = outputBuffer.slice();
+      outputBuffer.clear();
+      outputBatchSize = batchSize;
+    }
   }
 }
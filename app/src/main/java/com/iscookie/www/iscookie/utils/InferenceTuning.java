@@ -0,0 +1,224 @@
+package com.iscookie.www.iscookie.utils;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.iscookie.www.iscookie.R;
+import com.iscookie.www.iscookie.utils.Classifier.Device;
+import com.iscookie.www.iscookie.utils.Classifier.Model;
+import com.iscookie.www.iscookie.utils.InferenceAutotuner.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the {@link InferenceAutotuner} on this device and remembers its choice.
+ *
+ * <p>The chosen configuration is stored with the app version and the bundled model files it was
+ * measured with, so an update of either triggers tuning again. {@link Classifier#create(Activity)}
+ * uses the stored configuration, or {@link #DEFAULT_CONFIG} until the device was tuned. A device
+ * on which not even the reference configuration runs keeps the default until the next update.
+ */
+public final class InferenceTuning {
+  private static final Logger LOGGER = new Logger();
+
+  private static final String PREFERENCES = "inference_tuning";
+  private static final String KEY_CONFIG = "config";
+  private static final String KEY_TUNED_FOR = "tuned_for";
+
+  /** The configuration used before tuning and whenever tuning fails. */
+  public static final Config DEFAULT_CONFIG =
+      new Config(Model.QUANTIZED.name(), Device.CPU.name(), 1);
+
+  /** The configuration whose labels other candidates have to agree with. */
+  private static final Config REFERENCE_CONFIG =
+      new Config(Model.FLOAT.name(), Device.CPU.name(), 1);
+
+  private static final int[] THREAD_COUNTS = {1, 2, 4};
+
+  /** NNAPI is only available from Android 8.1. */
+  private static final int MIN_NNAPI_SDK = 27;
+
+  private InferenceTuning() {}
+
+  /** Returns the configuration tuned for this app and model version, or {@link #DEFAULT_CONFIG}. */
+  public static Config load(Context context) {
+    final SharedPreferences preferences = getPreferences(context);
+    if (!getVersionKey(context).equals(preferences.getString(KEY_TUNED_FOR, null))) {
+      return DEFAULT_CONFIG;
+    }
+    final Config config = Config.parse(preferences.getString(KEY_CONFIG, null));
+    return isSupported(config) ? config : DEFAULT_CONFIG;
+  }
+
+  /**
+   * Tunes the device unless it was already tuned for this app and model version. Callers on
+   * different threads wait for one tuning run instead of benchmarking in parallel.
+   */
+  public static synchronized Config tuneIfNeeded(Activity activity) {
+    final String versionKey = getVersionKey(activity);
+    if (versionKey.equals(getPreferences(activity).getString(KEY_TUNED_FOR, null))) {
+      return load(activity);
+    }
+    final InferenceAutotuner.Result result = tune(activity);
+    // Not even the reference ran: keep the default until the next update instead of paying for
+    // the benchmark again on every cold start.
+    final Config best = result.getBest() != null ? result.getBest() : DEFAULT_CONFIG;
+    getPreferences(activity)
+        .edit()
+        .putString(KEY_CONFIG, best.toString())
+        .putString(KEY_TUNED_FOR, versionKey)
+        .apply();
+    return best;
+  }
+
+  /**
+   * Benchmarks every model, device and thread count this device supports on the bundled
+   * calibration image. Blocks for several seconds, never call it on the main thread.
+   */
+  public static InferenceAutotuner.Result tune(Activity activity) {
+    final long startTime = SystemClock.uptimeMillis();
+    final InferenceAutotuner tuner =
+        new InferenceAutotuner(new ClassifierBackend(activity), REFERENCE_CONFIG);
+    final InferenceAutotuner.Result result = tuner.tune(getCandidates());
+    for (final InferenceAutotuner.Measurement measurement : result.getMeasurements()) {
+      LOGGER.i("Autotune %s", measurement);
+    }
+    LOGGER.i(
+        "Autotune picked %s in %d ms", result.getBest(), SystemClock.uptimeMillis() - startTime);
+    return result;
+  }
+
+  /** Lists the configurations worth measuring on this device. */
+  static List<Config> getCandidates() {
+    final int cores = Runtime.getRuntime().availableProcessors();
+    final List<Config> candidates = new ArrayList<Config>();
+    for (final Model model : Model.values()) {
+      for (final int numThreads : THREAD_COUNTS) {
+        if (numThreads <= cores) {
+          candidates.add(new Config(model.name(), Device.CPU.name(), numThreads));
+        }
+      }
+      if (Build.VERSION.SDK_INT >= MIN_NNAPI_SDK) {
+        candidates.add(new Config(model.name(), Device.NNAPI.name(), 1));
+      }
+      // The GPU delegate doesn't support quantized models.
+      if (model == Model.FLOAT) {
+        candidates.add(new Config(model.name(), Device.GPU.name(), 1));
+      }
+    }
+    return candidates;
+  }
+
+  private static boolean isSupported(Config config) {
+    if (config == null) {
+      return false;
+    }
+    try {
+      Model.valueOf(config.getModel());
+      Device.valueOf(config.getDevice());
+      return config.getNumThreads() > 0;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  private static SharedPreferences getPreferences(Context context) {
+    return context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+  }
+
+  /** Identifies the app version and the bundled models, for example "12:a.tflite=4276352". */
+  private static String getVersionKey(Context context) {
+    final StringBuilder key = new StringBuilder();
+    try {
+      key.append(
+          context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionCode);
+    } catch (PackageManager.NameNotFoundException e) {
+      key.append('?');
+    }
+    try {
+      final String[] assets = context.getAssets().list("");
+      Arrays.sort(assets);
+      for (final String asset : assets) {
+        if (asset.endsWith(".tflite")) {
+          key.append(':').append(asset).append('=');
+          try (AssetFileDescriptor descriptor = context.getAssets().openFd(asset)) {
+            key.append(descriptor.getLength());
+          }
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.w("Failed to list models: %s", e);
+    }
+    return key.toString();
+  }
+
+  /** Runs the calibration image through real classifiers. */
+  private static final class ClassifierBackend implements InferenceAutotuner.Backend {
+    private final Activity activity;
+    private final Bitmap calibrationImage;
+
+    ClassifierBackend(Activity activity) {
+      this.activity = activity;
+      calibrationImage =
+          BitmapFactory.decodeResource(activity.getResources(), R.drawable.cookie_logo);
+    }
+
+    @Override
+    public InferenceAutotuner.Session open(Config config) throws IOException {
+      final Classifier classifier =
+          Classifier.create(
+              activity,
+              Model.valueOf(config.getModel()),
+              Device.valueOf(config.getDevice()),
+              config.getNumThreads());
+      // Calibration runs stay out of the latency histograms the app reports.
+      classifier.setMetrics(new ClassificationMetrics());
+      final Bitmap input =
+          Bitmap.createScaledBitmap(
+              calibrationImage, classifier.getImageSizeX(), classifier.getImageSizeY(), true);
+      return new ClassifierSession(classifier, input);
+    }
+  }
+
+  private static final class ClassifierSession implements InferenceAutotuner.Session {
+    private final Classifier classifier;
+    private final Bitmap input;
+    private final RecognitionResults results = new RecognitionResults();
+
+    ClassifierSession(Classifier classifier, Bitmap input) {
+      this.classifier = classifier;
+      this.input = input;
+    }
+
+    @Override
+    public long run() {
+      final long startTime = SystemClock.elapsedRealtimeNanos();
+      classifier.recognizeImage(input, results);
+      return SystemClock.elapsedRealtimeNanos() - startTime;
+    }
+
+    @Override
+    public int[] getTopLabels() {
+      final int[] labels = new int[results.size()];
+      for (int rank = 0; rank < labels.length; ++rank) {
+        labels[rank] = Integer.parseInt(results.get(rank).getId());
+      }
+      return labels;
+    }
+
+    @Override
+    public void close() {
+      classifier.close();
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package com.iscookie.www.iscookie.utils;
+
+import android.graphics.Bitmap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Converts bitmaps into a classifier's input layout using its own scratch buffers, so frames can be
+ * packed on one thread while the classifier runs inference on another. Obtain one from {@link
+ * Classifier#newInputPacker()}. Each packer is meant for a single thread.
+ */
+public final class InputPacker {
+
+  private final int width;
+  private final int height;
+  private final int[] pixels;
+  private final PixelPacker pixelPacker;
+
+  InputPacker(int width, int height, PixelPacker pixelPacker) {
+    this.width = width;
+    this.height = height;
+    this.pixelPacker = pixelPacker;
+    pixels = new int[width * height];
+  }
+
+  /** Allocates a direct buffer holding one packed image. */
+  public ByteBuffer allocate() {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(pixelPacker.getPackedSize(pixels.length));
+    buffer.order(ByteOrder.nativeOrder());
+    return buffer;
+  }
+
+  /**
+   * Packs {@code bitmap}, already scaled to the classifier's input size, into {@code buffer} from
+   * its start.
+   */
+  public void pack(Bitmap bitmap, ByteBuffer buffer) {
+    if (bitmap.getWidth() != width || bitmap.getHeight() != height) {
+      throw new IllegalArgumentException(
+          "Expected a " + width + "x" + height + " bitmap, got "
+              + bitmap.getWidth() + "x" + bitmap.getHeight());
+    }
+    bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+    buffer.rewind();
+    pixelPacker.pack(pixels, pixels.length, buffer);
+  }
+
+  /** Hashes the last packed bitmap with {@code hasher}, for looking it up in a result cache. */
+  long hashPacked(FrameHasher hasher) {
+    return hasher.hash(pixels, width, height);
+  }
+}
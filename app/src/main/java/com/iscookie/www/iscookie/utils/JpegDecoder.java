@@ -0,0 +1,215 @@
+package com.iscookie.www.iscookie.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.support.media.ExifInterface;
+
+import com.iscookie.www.iscookie.utils.ClassificationMetrics.Stage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Decodes camera JPEGs straight to model input size.
+ *
+ * <p>Still captures are 12 MP and more, while the model wants 224x224. Instead of decoding every
+ * pixel and scaling down afterwards, the decoder reads the JPEG bounds first and lets libjpeg
+ * skip detail with the largest power-of-two {@code inSampleSize} that keeps the picture at least
+ * as large as the target. The subsampled picture is decoded as {@link Bitmap.Config#RGB_565},
+ * since JPEGs have no alpha, into a bitmap from a {@link BitmapPool} where the platform allows it.
+ * A single draw then applies the EXIF orientation and scales into a pooled target bitmap.
+ *
+ * <p>Not thread safe.
+ */
+public final class JpegDecoder {
+  private static final Logger LOGGER = new Logger();
+
+  private final BitmapPool pool;
+  private final Bitmap.Config decodeConfig;
+  private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+  private final Matrix matrix = new Matrix();
+  private final ClassificationMetrics metrics = ClassificationMetrics.global();
+
+  private int lastSampleSize;
+
+  /** @param pool Supplies decode and target bitmaps and takes back decode bitmaps. */
+  public JpegDecoder(BitmapPool pool) {
+    this(pool, Bitmap.Config.RGB_565);
+  }
+
+  /** @param decodeConfig The config of the subsampled picture before orientation and scaling. */
+  public JpegDecoder(BitmapPool pool, Bitmap.Config decodeConfig) {
+    this.pool = pool;
+    this.decodeConfig = decodeConfig;
+  }
+
+  /**
+   * Decodes {@code jpeg}, upright, into an ARGB_8888 bitmap of exactly {@code targetWidth} x
+   * {@code targetHeight}. Like {@link Bitmap#createScaledBitmap}, the aspect ratio isn't kept. The
+   * bitmap comes from the pool; give it back with {@link BitmapPool#put} once it isn't shown.
+   *
+   * @throws IOException if {@code jpeg} can't be decoded.
+   */
+  public Bitmap decode(byte[] jpeg, int targetWidth, int targetHeight) throws IOException {
+    Trace.beginSection("decodeJpeg");
+    final long decodeStart = SystemClock.elapsedRealtimeNanos();
+    final BitmapFactory.Options options = new BitmapFactory.Options();
+    final int orientation;
+    final int sampleSize;
+    final Bitmap decoded;
+    try {
+      options.inJustDecodeBounds = true;
+      BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+      if (options.outWidth <= 0 || options.outHeight <= 0) {
+        throw new IOException("Not a decodable image (" + jpeg.length + " bytes)");
+      }
+
+      orientation = readOrientation(jpeg);
+      final boolean transposed = isTransposed(orientation);
+      // The target is upright, the encoded picture may be stored sideways.
+      sampleSize =
+          computeSampleSize(
+              options.outWidth,
+              options.outHeight,
+              transposed ? targetHeight : targetWidth,
+              transposed ? targetWidth : targetHeight);
+      decoded = decodeSampled(jpeg, options, sampleSize);
+    } finally {
+      Trace.endSection();
+    }
+    final long scaleStart = SystemClock.elapsedRealtimeNanos();
+    metrics.record(Stage.DECODE, scaleStart - decodeStart);
+
+    Trace.beginSection("orientAndScale");
+    final Bitmap result = pool.get(targetWidth, targetHeight, Bitmap.Config.ARGB_8888);
+    setTransform(
+        matrix, orientation, decoded.getWidth(), decoded.getHeight(), targetWidth, targetHeight);
+    // The transform covers the whole target, so stale pooled contents are overdrawn.
+    new Canvas(result).drawBitmap(decoded, matrix, paint);
+    metrics.record(Stage.SCALE, SystemClock.elapsedRealtimeNanos() - scaleStart);
+    Trace.endSection();
+
+    lastSampleSize = sampleSize;
+    LOGGER.v(
+        "Decoded %dx%d JPEG at 1/%d to %dx%d, orientation %d",
+        options.outWidth,
+        options.outHeight,
+        sampleSize,
+        decoded.getWidth(),
+        decoded.getHeight(),
+        orientation);
+    pool.put(decoded);
+    return result;
+  }
+
+  private Bitmap decodeSampled(byte[] jpeg, BitmapFactory.Options options, int sampleSize)
+      throws IOException {
+    options.inJustDecodeBounds = false;
+    options.inSampleSize = sampleSize;
+    options.inPreferredConfig = decodeConfig;
+    options.inMutable = true;
+    // Round up, libjpeg may too.
+    options.inBitmap =
+        pool.getReusable(
+            (options.outWidth + sampleSize - 1) / sampleSize,
+            (options.outHeight + sampleSize - 1) / sampleSize,
+            decodeConfig);
+    Bitmap decoded;
+    try {
+      decoded = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+    } catch (IllegalArgumentException e) {
+      // The platform rejected the pooled bitmap after all.
+      LOGGER.w("Could not decode into a pooled bitmap: %s", e);
+      pool.put(options.inBitmap);
+      options.inBitmap = null;
+      decoded = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+    }
+    if (decoded == null) {
+      pool.put(options.inBitmap);
+      throw new IOException("Failed to decode " + jpeg.length + " byte JPEG");
+    }
+    return decoded;
+  }
+
+  /** Returns the {@code inSampleSize} of the last decode. */
+  public int getLastSampleSize() {
+    return lastSampleSize;
+  }
+
+  /**
+   * Returns the largest power of two that keeps a {@code width} x {@code height} picture at least
+   * {@code targetWidth} x {@code targetHeight} when both sides are divided by it.
+   */
+  static int computeSampleSize(int width, int height, int targetWidth, int targetHeight) {
+    int sampleSize = 1;
+    while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+
+  /** Returns the EXIF orientation of {@code jpeg}, or normal if it has none. */
+  private static int readOrientation(byte[] jpeg) {
+    try {
+      return new ExifInterface(new ByteArrayInputStream(jpeg))
+          .getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+    } catch (IOException e) {
+      LOGGER.w("Could not read EXIF orientation: %s", e);
+      return ExifInterface.ORIENTATION_NORMAL;
+    }
+  }
+
+  /** Whether the picture is stored with width and height swapped. */
+  private static boolean isTransposed(int orientation) {
+    return orientation == ExifInterface.ORIENTATION_TRANSPOSE
+        || orientation == ExifInterface.ORIENTATION_ROTATE_90
+        || orientation == ExifInterface.ORIENTATION_TRANSVERSE
+        || orientation == ExifInterface.ORIENTATION_ROTATE_270;
+  }
+
+  /**
+   * Sets {@code matrix} to map a stored {@code width} x {@code height} picture upright onto a
+   * {@code targetWidth} x {@code targetHeight} bitmap.
+   */
+  private static void setTransform(
+      Matrix matrix, int orientation, int width, int height, int targetWidth, int targetHeight) {
+    matrix.setTranslate(-width / 2f, -height / 2f);
+    switch (orientation) {
+      case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+        matrix.postScale(-1, 1);
+        break;
+      case ExifInterface.ORIENTATION_ROTATE_180:
+        matrix.postRotate(180);
+        break;
+      case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+        matrix.postScale(1, -1);
+        break;
+      case ExifInterface.ORIENTATION_TRANSPOSE:
+        matrix.postRotate(90);
+        matrix.postScale(-1, 1);
+        break;
+      case ExifInterface.ORIENTATION_ROTATE_90:
+        matrix.postRotate(90);
+        break;
+      case ExifInterface.ORIENTATION_TRANSVERSE:
+        matrix.postRotate(-90);
+        matrix.postScale(-1, 1);
+        break;
+      case ExifInterface.ORIENTATION_ROTATE_270:
+        matrix.postRotate(-90);
+        break;
+      default:
+        break;
+    }
+    final boolean transposed = isTransposed(orientation);
+    final float uprightWidth = transposed ? height : width;
+    final float uprightHeight = transposed ? width : height;
+    matrix.postScale(targetWidth / uprightWidth, targetHeight / uprightHeight);
+    matrix.postTranslate(targetWidth / 2f, targetHeight / 2f);
+  }
+}
@@ -0,0 +1,289 @@
+package com.iscookie.www.iscookie.utils;
+
+import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.iscookie.www.iscookie.utils.Classifier.Device;
+import com.iscookie.www.iscookie.utils.Classifier.Model;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps classifiers and their memory-mapped models alive across activities.
+ *
+ * <p>The cache lives as long as the process, so a rotated or recreated activity gets back the
+ * interpreter it used before instead of mapping and loading the model again. Classifiers are keyed
+ * by model, device and thread count and leased exclusively: callers {@link #acquire} a classifier
+ * and {@link #release} it when done, and a key that is already leased gets a second instance
+ * instead of sharing the first. Holders configure their lease themselves; {@link #release} resets
+ * the settings, so the next holder starts from the defaults. New classifiers are loaded and
+ * warmed up once, outside the cache lock, before they are published and handed out.
+ *
+ * <p>A classifier nobody holds stays warm for {@link #DEFAULT_IDLE_TIMEOUT_MS} and is then
+ * closed. Model mappings outlive their classifiers so a new interpreter doesn't map the file
+ * again, and classifiers on the same file share one mapping. Under memory pressure the cache
+ * closes idle interpreters first and drops unused mappings only on severe trim levels.
+ */
+public final class ModelCache implements ComponentCallbacks2 {
+  private static final Logger LOGGER = new Logger();
+
+  /** How long a released classifier stays open for the next {@link #acquire}. */
+  public static final long DEFAULT_IDLE_TIMEOUT_MS = 60 * 1000;
+
+  private static ModelCache instance;
+
+  /** A classifier and whether a caller holds it. */
+  private static final class Entry {
+    final String key;
+    final Classifier classifier;
+    boolean leased;
+    long idleSinceMs;
+
+    Entry(String key, Classifier classifier) {
+      this.key = key;
+      this.classifier = classifier;
+    }
+  }
+
+  private final List<Entry> entries = new ArrayList<Entry>();
+  private final Map<String, MappedByteBuffer> models = new HashMap<String, MappedByteBuffer>();
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Runnable evictIdle = this::evictIdle;
+  private final long idleTimeoutMs;
+
+  private ModelCache(long idleTimeoutMs) {
+    this.idleTimeoutMs = idleTimeoutMs;
+  }
+
+  /** Returns the process-wide cache, registering it for memory trim callbacks on first use. */
+  public static synchronized ModelCache get(Context context) {
+    if (instance == null) {
+      instance = new ModelCache(DEFAULT_IDLE_TIMEOUT_MS);
+      context.getApplicationContext().registerComponentCallbacks(instance);
+    }
+    return instance;
+  }
+
+  /**
+   * Acquires a classifier with the configuration {@link InferenceTuning} picked for this device,
+   * like {@link Classifier#create(Activity)}.
+   */
+  public Classifier acquire(Activity activity) throws IOException {
+    final InferenceAutotuner.Config config = InferenceTuning.load(activity);
+    final ModelSpec spec =
+        ModelRegistry.get(activity).getDefault(Model.valueOf(config.getModel()));
+    return acquire(activity, spec, Device.valueOf(config.getDevice()), config.getNumThreads());
+  }
+
+  /**
+   * Leases an idle classifier for this configuration, creating and warming up one if none is
+   * idle. The caller holds it exclusively until the matching {@link #release}.
+   *
+   * <p>Loading and warm-up run outside the cache lock, so {@link #trim}, {@link #release} and the
+   * statistics on the main thread never wait for a model to load.
+   */
+  public Classifier acquire(Activity activity, ModelSpec spec, Device device, int numThreads)
+      throws IOException {
+    final String key = spec.getName() + "/" + device + "/" + numThreads;
+    final MappedByteBuffer sharedModel;
+    synchronized (this) {
+      final Entry idle = findIdle(key);
+      if (idle != null) {
+        idle.leased = true;
+        LOGGER.d("Model cache reused %s", key);
+        return idle.classifier;
+      }
+      sharedModel = models.get(spec.getModelPath());
+    }
+
+    final Classifier classifier =
+        Classifier.create(activity, spec, device, numThreads, sharedModel);
+    try {
+      classifier.warmUp(ModelLifecycle.DEFAULT_WARM_UP_RUNS);
+    } catch (RuntimeException e) {
+      classifier.close();
+      throw e;
+    }
+
+    synchronized (this) {
+      if (!models.containsKey(spec.getModelPath())) {
+        models.put(spec.getModelPath(), classifier.getModelBuffer());
+      }
+      final Entry entry = new Entry(key, classifier);
+      entry.leased = true;
+      entries.add(entry);
+      LOGGER.d("Model cache created %s; %s", key, this);
+    }
+    return classifier;
+  }
+
+  /**
+   * Gives up a classifier obtained from {@link #acquire} and resets its settings; it may stay open
+   * for later reuse.
+   */
+  public synchronized void release(Classifier classifier) {
+    final Entry entry = find(classifier);
+    if (entry == null) {
+      throw new IllegalArgumentException("Classifier does not belong to this cache.");
+    }
+    if (!entry.leased) {
+      throw new IllegalStateException("Classifier " + entry.key + " released too often.");
+    }
+    classifier.resetSettings();
+    entry.leased = false;
+    entry.idleSinceMs = SystemClock.uptimeMillis();
+    evictIdle();
+  }
+
+  private Entry findIdle(String key) {
+    for (final Entry entry : entries) {
+      if (!entry.leased && entry.key.equals(key)) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  private Entry find(Classifier classifier) {
+    for (final Entry entry : entries) {
+      if (entry.classifier == classifier) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /** Closes classifiers that have been idle for the timeout and schedules the next check. */
+  private synchronized void evictIdle() {
+    final long now = SystemClock.uptimeMillis();
+    long nextCheckMs = Long.MAX_VALUE;
+    for (final Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+      final Entry entry = it.next();
+      if (entry.leased) {
+        continue;
+      }
+      final long idleMs = now - entry.idleSinceMs;
+      if (idleMs >= idleTimeoutMs) {
+        close(entry);
+        it.remove();
+      } else {
+        nextCheckMs = Math.min(nextCheckMs, idleTimeoutMs - idleMs);
+      }
+    }
+    handler.removeCallbacks(evictIdle);
+    if (nextCheckMs != Long.MAX_VALUE) {
+      handler.postDelayed(evictIdle, nextCheckMs);
+    }
+  }
+
+  /**
+   * Frees memory for the given {@link ComponentCallbacks2} trim level. Idle classifiers are closed
+   * once memory runs low or the UI is hidden; model mappings no classifier uses are dropped when
+   * memory is critical or the process is likely to be killed. Classifiers in use are never
+   * touched.
+   */
+  public synchronized void trim(int level) {
+    int closed = 0;
+    if (level >= TRIM_MEMORY_RUNNING_LOW) {
+      for (final Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+        final Entry entry = it.next();
+        if (!entry.leased) {
+          close(entry);
+          it.remove();
+          closed++;
+        }
+      }
+    }
+    int unmapped = 0;
+    if (level == TRIM_MEMORY_RUNNING_CRITICAL || level >= TRIM_MEMORY_MODERATE) {
+      final List<String> used = new ArrayList<String>();
+      for (final Entry entry : entries) {
+        used.add(entry.classifier.getModelPath());
+      }
+      // Unmapping is left to the garbage collector; the cache only drops its reference.
+      unmapped = models.size();
+      models.keySet().retainAll(used);
+      unmapped -= models.size();
+    }
+    LOGGER.i(
+        "Trimmed model cache at level %d: closed %d classifiers, dropped %d models; %s",
+        level, closed, unmapped, this);
+  }
+
+  private void close(Entry entry) {
+    LOGGER.d("Model cache closing %s", entry.key);
+    entry.classifier.close();
+  }
+
+  @Override
+  public void onTrimMemory(int level) {
+    trim(level);
+  }
+
+  @Override
+  public void onLowMemory() {
+    trim(TRIM_MEMORY_COMPLETE);
+  }
+
+  @Override
+  public void onConfigurationChanged(Configuration newConfig) {}
+
+  /** Returns the number of open classifiers, held or idle. */
+  public synchronized int getClassifierCount() {
+    return entries.size();
+  }
+
+  /** Returns the number of open classifiers nobody holds. */
+  public synchronized int getIdleCount() {
+    int idle = 0;
+    for (final Entry entry : entries) {
+      if (!entry.leased) {
+        idle++;
+      }
+    }
+    return idle;
+  }
+
+  /**
+   * Returns the size of the cached model mappings in bytes. They live outside the Java heap, in
+   * pages the system can reclaim since they are backed by the APK.
+   */
+  public synchronized long getMappedBytes() {
+    long bytes = 0;
+    for (final MappedByteBuffer model : models.values()) {
+      bytes += model.capacity();
+    }
+    return bytes;
+  }
+
+  /** Returns the size of the direct input and output buffers of all open classifiers in bytes. */
+  public synchronized long getDirectBytes() {
+    long bytes = 0;
+    for (final Entry entry : entries) {
+      bytes += entry.classifier.getDirectBufferBytes();
+    }
+    return bytes;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        "%d classifiers (%d idle), %d models, %.1f MB mapped, %.1f MB direct",
+        entries.size(),
+        getIdleCount(),
+        models.size(),
+        getMappedBytes() / (1024f * 1024f),
+        getDirectBytes() / (1024f * 1024f));
+  }
+}
@@ -0,0 +1,158 @@
+package com.iscookie.www.iscookie.utils;
+
+import android.os.SystemClock;
+
+import java.util.concurrent.Callable;
+
+import io.reactivex.Single;
+import io.reactivex.functions.Consumer;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Loads a {@link Classifier} once in the background, warms it up and tells callers when it is
+ * ready.
+ *
+ * <p>{@link #whenReady()} returns a cached {@link Single}: the model is loaded and warmed up once,
+ * no matter how many callers subscribe, and callers that subscribe later get the loaded classifier
+ * right away. Callers never block a thread while waiting. The lifecycle also records the cold-load,
+ * warm-up and first real inference latencies.
+ */
+public final class ModelLifecycle {
+  private static final Logger LOGGER = new Logger();
+
+  /** Number of inferences on synthetic input run before the classifier is reported ready. */
+  public static final int DEFAULT_WARM_UP_RUNS = 2;
+
+  private final Single<Classifier> ready;
+  private final Consumer<Classifier> release;
+
+  private volatile long coldLoadMs = -1;
+  private volatile long warmUpMs = -1;
+  private volatile long firstInferenceMs = -1;
+  private volatile boolean closed = false;
+
+  /** Callers between {@link #beginUse()} and {@link #endUse()}; guarded by {@code this}. */
+  private int users = 0;
+
+  /**
+   * @param factory Creates the classifier, called at most once on a background thread.
+   * @param warmUpRuns The number of warm-up inferences to run before the classifier is ready.
+   */
+  public ModelLifecycle(final Callable<Classifier> factory, final int warmUpRuns) {
+    this(factory, warmUpRuns, Classifier::close);
+  }
+
+  /**
+   * @param factory Creates or acquires the classifier, called at most once on a background thread.
+   * @param warmUpRuns The number of warm-up inferences to run unless the classifier already did.
+   * @param release Gives the classifier back on {@link #close()}, for example to a {@link
+   *     ModelCache}.
+   */
+  public ModelLifecycle(
+      final Callable<Classifier> factory,
+      final int warmUpRuns,
+      final Consumer<Classifier> release) {
+    this.release = release;
+    ready =
+        Single.fromCallable(() -> load(factory, warmUpRuns)).subscribeOn(Schedulers.io()).cache();
+  }
+
+  private Classifier load(Callable<Classifier> factory, int warmUpRuns) throws Exception {
+    final long startTime = SystemClock.uptimeMillis();
+    final Classifier classifier = factory.call();
+    coldLoadMs = SystemClock.uptimeMillis() - startTime;
+    // A classifier reused from a cache is warm already.
+    warmUpMs = classifier.isWarm() ? 0 : classifier.warmUp(warmUpRuns);
+    LOGGER.i("Classifier ready: cold load %d ms, warm-up %d ms", coldLoadMs, warmUpMs);
+    if (closed) {
+      // Closed while loading, nobody will release this classifier later.
+      release.accept(classifier);
+      throw new IllegalStateException("Model lifecycle closed while loading.");
+    }
+    return classifier;
+  }
+
+  /** Starts loading the model now instead of on the first {@link #whenReady()} subscription. */
+  public ModelLifecycle start() {
+    ready.subscribe(
+        classifier -> {}, throwable -> LOGGER.e(throwable, "Failed to create classifier."));
+    return this;
+  }
+
+  /**
+   * Returns a {@link Single} that emits the warmed-up classifier once it is ready, or the error
+   * that prevented loading it.
+   */
+  public Single<Classifier> whenReady() {
+    return ready;
+  }
+
+  /**
+   * Records the latency of a real inference; only the first one after loading is kept.
+   *
+   * @param inferenceMs The time the inference took in milliseconds.
+   */
+  public void recordInference(long inferenceMs) {
+    if (firstInferenceMs < 0) {
+      firstInferenceMs = inferenceMs;
+      LOGGER.i("First inference after warm-up: %d ms", inferenceMs);
+    }
+  }
+
+  /** Returns the time spent creating the classifier in milliseconds, or -1 if not loaded yet. */
+  public long getColdLoadMs() {
+    return coldLoadMs;
+  }
+
+  /** Returns the time spent on warm-up inferences in milliseconds, or -1 if not loaded yet. */
+  public long getWarmUpMs() {
+    return warmUpMs;
+  }
+
+  /** Returns the latency of the first real inference in milliseconds, or -1 if none ran yet. */
+  public long getFirstInferenceMs() {
+    return firstInferenceMs;
+  }
+
+  /**
+   * Marks the start of a use of the loaded classifier that may outlive its holder, such as a
+   * background task. {@link #close()} defers the release until every use has ended.
+   *
+   * @return False if the lifecycle is already closed; the classifier must not be used then.
+   */
+  public synchronized boolean beginUse() {
+    if (closed) {
+      return false;
+    }
+    users++;
+    return true;
+  }
+
+  /** Ends a use started with {@link #beginUse()}, releasing the classifier if it was the last. */
+  public void endUse() {
+    synchronized (this) {
+      if (users == 0) {
+        throw new IllegalStateException("endUse() without beginUse().");
+      }
+      if (--users > 0 || !closed) {
+        return;
+      }
+    }
+    ready.subscribe(release, throwable -> {});
+  }
+
+  /**
+   * Releases the classifier once it is loaded and no use begun with {@link #beginUse()} is still
+   * running, or right away if that is already the case.
+   */
+  public void close() {
+    synchronized (this) {
+      closed = true;
+      if (users > 0) {
+        // The last endUse() releases it.
+        return;
+      }
+    }
+    ready.subscribe(release, throwable -> {});
+  }
+}
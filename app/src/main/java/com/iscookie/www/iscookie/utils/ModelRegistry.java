@@ -0,0 +1,105 @@
+package com.iscookie.www.iscookie.utils;
+
+import android.content.Context;
+
+import com.iscookie.www.iscookie.utils.Classifier.Model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The models bundled with the app, read once per process from the {@code *_info.txt} manifests in
+ * the assets. See {@link ModelSpec} for the manifest format.
+ *
+ * <p>Adding a MobileNet-style model only takes its .tflite file and a manifest; no new classifier
+ * subclass or constant is needed.
+ */
+public final class ModelRegistry {
+  private static final Logger LOGGER = new Logger();
+
+  private static ModelRegistry instance;
+
+  private final List<ModelSpec> specs;
+
+  ModelRegistry(List<ModelSpec> specs) {
+    this.specs = Collections.unmodifiableList(new ArrayList<ModelSpec>(specs));
+  }
+
+  /** Returns the registry of the app's models, reading the manifests on the first call. */
+  public static synchronized ModelRegistry get(Context context) throws IOException {
+    if (instance == null) {
+      final String[] assets = context.getAssets().list("");
+      Arrays.sort(assets);
+      final List<ModelSpec> specs = new ArrayList<ModelSpec>();
+      for (final String asset : assets) {
+        if (asset.endsWith(ModelSpec.INFO_SUFFIX)) {
+          final InputStream in = context.getAssets().open(asset);
+          final ModelSpec spec = ModelSpec.parse(asset, in);
+          LOGGER.d("Registered model %s", spec);
+          specs.add(spec);
+        }
+      }
+      instance = new ModelRegistry(specs);
+    }
+    return instance;
+  }
+
+  /** Returns every registered model, ordered by manifest name. */
+  public List<ModelSpec> getSpecs() {
+    return specs;
+  }
+
+  /** Returns the model named {@code name}, or null. */
+  public ModelSpec find(String name) {
+    for (final ModelSpec spec : specs) {
+      if (spec.getName().equals(name)) {
+        return spec;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the model of the given type with the largest input that fits in {@code maxInputSize}
+   * pixels per side, or the smallest such model if none fits.
+   *
+   * @throws IllegalStateException if no model of that type is bundled.
+   */
+  public ModelSpec getDefault(Model model, int maxInputSize) {
+    final ModelSpec.DataType dataType =
+        model == Model.QUANTIZED ? ModelSpec.DataType.UINT8 : ModelSpec.DataType.FLOAT32;
+    ModelSpec best = null;
+    for (final ModelSpec spec : specs) {
+      if (spec.getDataType() == dataType && isBetter(spec, best, maxInputSize)) {
+        best = spec;
+      }
+    }
+    if (best == null) {
+      throw new IllegalStateException("No " + model + " model bundled.");
+    }
+    return best;
+  }
+
+  /** Returns the largest model of the given type. */
+  public ModelSpec getDefault(Model model) {
+    return getDefault(model, Integer.MAX_VALUE);
+  }
+
+  private static boolean isBetter(ModelSpec spec, ModelSpec best, int maxInputSize) {
+    if (best == null) {
+      return true;
+    }
+    final int size = Math.max(spec.getInputWidth(), spec.getInputHeight());
+    final int bestSize = Math.max(best.getInputWidth(), best.getInputHeight());
+    final boolean fits = size <= maxInputSize;
+    final boolean bestFits = bestSize <= maxInputSize;
+    if (fits != bestFits) {
+      return fits;
+    }
+    return fits ? size > bestSize : size < bestSize;
+  }
+}
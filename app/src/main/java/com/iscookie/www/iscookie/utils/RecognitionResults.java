@@ -0,0 +1,89 @@
+package com.iscookie.www.iscookie.utils;
+
+import com.iscookie.www.iscookie.utils.Classifier.Recognition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A reusable holder for the top results of one classification.
+ *
+ * <p>{@link Classifier#recognizeImage(android.graphics.Bitmap, RecognitionResults)} clears and
+ * refills the holder, so a caller classifying many frames can keep a single instance around instead
+ * of receiving a new list per frame. Only the winning labels get a {@link Recognition}.
+ */
+public final class RecognitionResults {
+
+  private final ArrayList<Recognition> recognitions = new ArrayList<Recognition>();
+  private final List<Recognition> readOnlyView = Collections.unmodifiableList(recognitions);
+  private int confidentCount;
+  private TargetDecision targetDecision;
+
+  /** Removes all results so the holder can be filled again. */
+  public void recycle() {
+    recognitions.clear();
+    confidentCount = 0;
+    targetDecision = null;
+  }
+
+  /** Appends the next best result; confident results must come before all others. */
+  void add(Recognition recognition, boolean confident) {
+    recognitions.add(recognition);
+    if (confident) {
+      confidentCount++;
+    }
+  }
+
+  /**
+   * Returns how many of the leading results scored above the classifier's confidence threshold.
+   * The check is done in the model's native output domain, so it is exact for quantized models.
+   */
+  public int getConfidentCount() {
+    return confidentCount;
+  }
+
+  /** Returns the most confident result if it scored above the confidence threshold, or null. */
+  public Recognition getConfidentResult() {
+    return confidentCount > 0 ? recognitions.get(0) : null;
+  }
+
+  void setTargetDecision(TargetDecision targetDecision) {
+    this.targetDecision = targetDecision;
+  }
+
+  /**
+   * Returns whether the image shows the classifier's target, or null if the classifier has no
+   * {@link TargetSpec}.
+   */
+  public TargetDecision getTargetDecision() {
+    return targetDecision;
+  }
+
+  /** Returns the number of results, at most the classifier's result limit. */
+  public int size() {
+    return recognitions.size();
+  }
+
+  public boolean isEmpty() {
+    return recognitions.isEmpty();
+  }
+
+  /** Returns the result at {@code rank}, where rank 0 is the most confident. */
+  public Recognition get(int rank) {
+    return recognitions.get(rank);
+  }
+
+  /**
+   * Returns a read-only view of the results ordered by descending confidence. The view reflects
+   * later refills of this holder.
+   */
+  public List<Recognition> asList() {
+    return readOnlyView;
+  }
+
+  @Override
+  public String toString() {
+    return recognitions.toString();
+  }
+}
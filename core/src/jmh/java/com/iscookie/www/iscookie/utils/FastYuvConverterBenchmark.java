@@ -0,0 +1,74 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Converts one camera frame with the scalar reference, the table-driven row pair loop and the
+ * parallel variant of it. Chroma is interleaved like most Camera2 devices deliver it.
+ */
+@State(Scope.Thread)
+public class FastYuvConverterBenchmark {
+
+  @Param({"320x240", "640x480", "1280x720", "1920x1080"})
+  public String frameSize;
+
+  private int width;
+  private int height;
+  private byte[] yPlane;
+  private byte[] uPlane;
+  private byte[] vPlane;
+  private int[] argb;
+  private ForkJoinPool pool;
+
+  @Setup
+  public void setUp() {
+    final String[] dimensions = frameSize.split("x");
+    width = Integer.parseInt(dimensions[0]);
+    height = Integer.parseInt(dimensions[1]);
+    final Random random = new Random(42);
+    yPlane = new byte[width * height];
+    random.nextBytes(yPlane);
+    final byte[] chroma = new byte[width * ((height + 1) / 2)];
+    random.nextBytes(chroma);
+    uPlane = chroma;
+    vPlane = new byte[chroma.length];
+    System.arraycopy(chroma, 1, vPlane, 0, chroma.length - 1);
+    argb = new int[width * height];
+    pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public int[] scalar() {
+    YuvConverter.convertYUV420ToARGB8888(
+        yPlane, uPlane, vPlane, width, height, width, width, 2, argb);
+    return argb;
+  }
+
+  @Benchmark
+  public int[] tables() {
+    FastYuvConverter.convertYUV420ToARGB8888(
+        yPlane, uPlane, vPlane, width, height, width, width, 2, argb);
+    return argb;
+  }
+
+  /** Splits frames of at least {@link FastYuvConverter#PARALLEL_THRESHOLD_PIXELS} into bands. */
+  @Benchmark
+  public int[] parallel() {
+    FastYuvConverter.convertYUV420ToARGB8888(
+        yPlane, uPlane, vPlane, width, height, width, width, 2, argb, pool);
+    return argb;
+  }
+}
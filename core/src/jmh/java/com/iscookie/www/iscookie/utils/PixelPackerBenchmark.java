@@ -0,0 +1,51 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/** Packs one model input, as {@code Classifier.recognizeImage} does for every frame. */
+@State(Scope.Thread)
+public class PixelPackerBenchmark {
+
+  /** The side of the square model input. */
+  @Param({"128", "224", "299"})
+  public int size;
+
+  @Param({"float", "uint8"})
+  public String type;
+
+  private PixelPacker packer;
+  private int[] pixels;
+  private ByteBuffer buffer;
+
+  @Setup
+  public void setUp() {
+    final boolean quantized = "uint8".equals(type);
+    packer =
+        quantized
+            ? PixelPacker.forUint8()
+            : PixelPacker.forFloat(
+                new float[] {127.5f, 127.5f, 127.5f}, new float[] {127.5f, 127.5f, 127.5f});
+    pixels = new int[size * size];
+    final Random random = new Random(42);
+    for (int i = 0; i < pixels.length; ++i) {
+      pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+    }
+    buffer = ByteBuffer.allocateDirect(pixels.length * 3 * (quantized ? 1 : 4));
+    buffer.order(ByteOrder.nativeOrder());
+  }
+
+  @Benchmark
+  public ByteBuffer pack() {
+    buffer.rewind();
+    packer.pack(pixels, pixels.length, buffer);
+    return buffer;
+  }
+}
@@ -0,0 +1,47 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/** Selects the best labels from one output vector, as {@code Classifier.recognizeImage} does. */
+@State(Scope.Thread)
+public class TopKSelectorBenchmark {
+
+  /** 1001 is the MobileNet label count. */
+  @Param({"1001"})
+  public int numLabels;
+
+  @Param({"3", "10"})
+  public int k;
+
+  private TopKSelector selector;
+  private float[] probabilities;
+
+  @Setup
+  public void setUp() {
+    selector = new TopKSelector(k);
+    probabilities = new float[numLabels];
+    final Random random = new Random(42);
+    float sum = 0;
+    for (int i = 0; i < numLabels; ++i) {
+      // A softmax output: a long tail of small values and a few peaks.
+      probabilities[i] = (float) Math.pow(random.nextFloat(), 8);
+      sum += probabilities[i];
+    }
+    for (int i = 0; i < numLabels; ++i) {
+      probabilities[i] /= sum;
+    }
+  }
+
+  @Benchmark
+  public int select() {
+    selector.reset();
+    selector.offerAll(probabilities, numLabels);
+    return selector.finish() + selector.getIndex(0);
+  }
+}
@@ -0,0 +1,94 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Converts one camera frame with the Java fallback of {@code ImageUtils}. The chroma planes are
+ * laid out like the semi-planar frames most Camera2 devices deliver: U and V interleaved, so
+ * both have a pixel stride of 2.
+ */
+@State(Scope.Thread)
+public class YuvConverterBenchmark {
+
+  @Param({"320x240", "640x480", "1280x720", "1920x1080"})
+  public String frameSize;
+
+  private int width;
+  private int height;
+  private byte[] yPlane;
+  private byte[] uPlane;
+  private byte[] vPlane;
+  private ByteBuffer yBuffer;
+  private ByteBuffer uBuffer;
+  private ByteBuffer vBuffer;
+  private int[] argb;
+
+  @Setup
+  public void setUp() {
+    final String[] dimensions = frameSize.split("x");
+    width = Integer.parseInt(dimensions[0]);
+    height = Integer.parseInt(dimensions[1]);
+    final Random random = new Random(42);
+    yPlane = new byte[width * height];
+    random.nextBytes(yPlane);
+    // Interleaved chroma: V starts one byte after U in the same buffer.
+    final byte[] chroma = new byte[width * ((height + 1) / 2)];
+    random.nextBytes(chroma);
+    uPlane = chroma;
+    vPlane = new byte[chroma.length];
+    System.arraycopy(chroma, 1, vPlane, 0, chroma.length - 1);
+    argb = new int[width * height];
+    // Camera2 planes are direct buffers; V is a view one byte into the chroma buffer.
+    yBuffer = ByteBuffer.allocateDirect(yPlane.length);
+    yBuffer.put(yPlane).rewind();
+    uBuffer = ByteBuffer.allocateDirect(chroma.length);
+    uBuffer.put(chroma).rewind();
+    uBuffer.position(1);
+    vBuffer = uBuffer.slice();
+    uBuffer.rewind();
+  }
+
+  @Benchmark
+  public int[] convertYUV420ToARGB8888() {
+    YuvConverter.convertYUV420ToARGB8888(
+        yPlane, uPlane, vPlane, width, height, width, width, 2, argb);
+    return argb;
+  }
+
+  /** Reads the planes in place, without the per-frame copy into arrays. */
+  @Benchmark
+  public int[] convertYUV420ToARGB8888Direct() {
+    YuvConverter.convertYUV420ToARGB8888(
+        yBuffer, uBuffer, vBuffer, width, height, width, width, 2, argb);
+    return argb;
+  }
+
+  /** Copies the planes into arrays first, as {@code CameraActivity.fillBytes} does. */
+  @Benchmark
+  public int[] copyAndConvertYUV420ToARGB8888() {
+    yBuffer.get(yPlane).rewind();
+    uBuffer.get(uPlane).rewind();
+    vBuffer.get(vPlane, 0, vBuffer.remaining()).rewind();
+    YuvConverter.convertYUV420ToARGB8888(
+        yPlane, uPlane, vPlane, width, height, width, width, 2, argb);
+    return argb;
+  }
+
+  /** One pixel per call, to separate the color math from the plane addressing. */
+  @Benchmark
+  public int yuvToRgb() {
+    return YuvConverter.yuvToRgb(yPlane[0] & 0xFF, uPlane[0] & 0xFF, vPlane[0] & 0xFF);
+  }
+
+  @Benchmark
+  public int getYUVByteSize() {
+    return YuvConverter.getYUVByteSize(width, height);
+  }
+}
@@ -0,0 +1,92 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Turns one rotated camera frame into a 224x224 float tensor, fused and step by step. The
+ * multi-step variant stands in for the bitmap path with plain arrays: convert the whole frame,
+ * resample it into the input size and pack it.
+ */
+@State(Scope.Thread)
+public class YuvTensorPackerBenchmark {
+
+  private static final int INPUT_SIZE = 224;
+
+  @Param({"320x240", "640x480"})
+  public String frameSize;
+
+  private int width;
+  private int height;
+  private ByteBuffer yPlane;
+  private ByteBuffer uPlane;
+  private ByteBuffer vPlane;
+  private YuvTensorPacker tensorPacker;
+  private PixelPacker pixelPacker;
+  private int[] argb;
+  private int[] scaled;
+  private int[] sourceIndex;
+  private ByteBuffer input;
+
+  @Setup
+  public void setUp() {
+    final String[] dimensions = frameSize.split("x");
+    width = Integer.parseInt(dimensions[0]);
+    height = Integer.parseInt(dimensions[1]);
+    final Random random = new Random(42);
+    final byte[] luma = new byte[width * height];
+    final byte[] chroma = new byte[width * height / 2];
+    random.nextBytes(luma);
+    random.nextBytes(chroma);
+    yPlane = ByteBuffer.allocateDirect(luma.length);
+    yPlane.put(luma).rewind();
+    uPlane = ByteBuffer.allocateDirect(chroma.length);
+    uPlane.put(chroma).position(1);
+    vPlane = uPlane.slice();
+    uPlane.rewind();
+
+    pixelPacker =
+        PixelPacker.forFloat(
+            new float[] {127.5f, 127.5f, 127.5f}, new float[] {127.5f, 127.5f, 127.5f});
+    tensorPacker = new YuvTensorPacker(pixelPacker, INPUT_SIZE, INPUT_SIZE);
+    tensorPacker.configure(width, height, 90, true);
+    input = tensorPacker.allocate();
+
+    argb = new int[width * height];
+    scaled = new int[INPUT_SIZE * INPUT_SIZE];
+    // The same sampling as the fused packer, so both variants produce the same tensor.
+    sourceIndex = new int[scaled.length];
+    final float scale = Math.max(INPUT_SIZE / (float) height, INPUT_SIZE / (float) width);
+    for (int row = 0, i = 0; row < INPUT_SIZE; ++row) {
+      for (int col = 0; col < INPUT_SIZE; ++col, ++i) {
+        final int x = (int) Math.floor((row + 0.5f - INPUT_SIZE / 2f) / scale + width / 2f);
+        final int y = (int) Math.floor(-(col + 0.5f - INPUT_SIZE / 2f) / scale + height / 2f);
+        sourceIndex[i] = y * width + x;
+      }
+    }
+  }
+
+  @Benchmark
+  public ByteBuffer fused() {
+    tensorPacker.pack(yPlane, uPlane, vPlane, width, width, 2, input);
+    return input;
+  }
+
+  @Benchmark
+  public ByteBuffer convertScaleAndPack() {
+    YuvConverter.convertYUV420ToARGB8888(
+        yPlane, uPlane, vPlane, width, height, width, width, 2, argb);
+    for (int i = 0; i < scaled.length; ++i) {
+      scaled[i] = argb[sourceIndex[i]];
+    }
+    input.rewind();
+    pixelPacker.pack(scaled, scaled.length, input);
+    return input;
+  }
+}
@@ -0,0 +1,81 @@
+package com.iscookie.www.iscookie.utils;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Latency histograms for each stage of classifying a picture, shared by the whole process.
+ *
+ * <p>Stages record into {@link #global()} unless a classifier is given its own instance.
+ * Recording is allocation-free and lock-free; see {@link LatencyHistogram}.
+ */
+public final class ClassificationMetrics {
+
+  /** A timed part of the classification path. */
+  public enum Stage {
+    /** Decoding the captured JPEG. */
+    DECODE,
+    /** Scaling the decoded picture to the model input size. */
+    SCALE,
+    /** Converting pixels into the input tensor layout. */
+    PACK,
+    /** Running the interpreter. */
+    INFERENCE,
+    /** Selecting the best labels and building results. */
+    TOP_K,
+    /** From the user's tap to the result being available, excluding UI delays. */
+    END_TO_END,
+  }
+
+  private static final ClassificationMetrics GLOBAL = new ClassificationMetrics();
+
+  private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+  public ClassificationMetrics() {
+    for (int i = 0; i < histograms.length; ++i) {
+      histograms[i] = new LatencyHistogram();
+    }
+  }
+
+  /** Returns the metrics of the app's classification path. */
+  public static ClassificationMetrics global() {
+    return GLOBAL;
+  }
+
+  /** Records that {@code stage} took {@code nanos} nanoseconds. */
+  public void record(Stage stage, long nanos) {
+    histograms[stage.ordinal()].recordNanos(nanos);
+  }
+
+  public LatencyHistogram getHistogram(Stage stage) {
+    return histograms[stage.ordinal()];
+  }
+
+  /** Takes a snapshot of every stage. */
+  public Map<Stage, LatencyHistogram.Snapshot> snapshot() {
+    final Map<Stage, LatencyHistogram.Snapshot> snapshots =
+        new EnumMap<Stage, LatencyHistogram.Snapshot>(Stage.class);
+    for (final Stage stage : Stage.values()) {
+      snapshots.put(stage, getHistogram(stage).snapshot());
+    }
+    return snapshots;
+  }
+
+  /** Forgets all recorded latencies. */
+  public void reset() {
+    for (final LatencyHistogram histogram : histograms) {
+      histogram.reset();
+    }
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder();
+    for (final Map.Entry<Stage, LatencyHistogram.Snapshot> entry : snapshot().entrySet()) {
+      if (entry.getValue().getCount() > 0) {
+        builder.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+      }
+    }
+    return builder.toString().trim();
+  }
+}
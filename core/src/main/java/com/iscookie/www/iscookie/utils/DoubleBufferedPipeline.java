@@ -0,0 +1,257 @@
+package com.iscookie.www.iscookie.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A two-stage pipeline that prepares the next input while the current one is processed.
+ *
+ * <p>The pipeline owns two buffers. A prepare thread fills a free buffer from the next submitted
+ * input, for example by scaling and packing a frame, and hands it over through a bounded queue to
+ * a process thread, for example one running inference, which returns the buffer once done. With
+ * both stages busy the throughput approaches that of the slower stage instead of the sum of both.
+ *
+ * <p>The pipeline measures how busy each stage is and how long it stalls: the prepare stage
+ * stalls waiting for a free buffer when processing is the bottleneck, and the process stage
+ * stalls waiting for a prepared buffer when preparation is. Waiting for input counts as idle, not
+ * as stall.
+ *
+ * @param <I> The type of submitted inputs.
+ * @param <B> The type of the buffers prepared inputs are stored in.
+ * @param <R> The type of processing results.
+ */
+public final class DoubleBufferedPipeline<I, B, R> {
+
+  /** Fills a buffer from an input. Runs on the prepare thread. */
+  public interface Preparer<I, B> {
+    void prepare(I input, B buffer) throws Exception;
+  }
+
+  /** Processes a prepared buffer. Runs on the process thread. */
+  public interface Processor<B, R> {
+    R process(B buffer) throws Exception;
+  }
+
+  /** Receives results and errors, on the thread of the stage that produced them. */
+  public interface Listener<I, R> {
+    void onResult(I input, R result);
+
+    void onError(I input, Exception e);
+  }
+
+  /** A buffer and the input it currently holds. */
+  private static final class Slot<I, B> {
+    final B buffer;
+    I input;
+
+    Slot(B buffer) {
+      this.buffer = buffer;
+    }
+  }
+
+  private final Preparer<I, B> preparer;
+  private final Processor<B, R> processor;
+  private final Listener<I, R> listener;
+
+  private final BlockingQueue<I> inputs;
+  private final BlockingQueue<Slot<I, B>> freeSlots = new ArrayBlockingQueue<Slot<I, B>>(2);
+  private final BlockingQueue<Slot<I, B>> preparedSlots = new ArrayBlockingQueue<Slot<I, B>>(2);
+
+  private final Thread prepareThread;
+  private final Thread processThread;
+
+  /** Whether the prepare stage holds an input it hasn't handed over yet. */
+  private volatile boolean preparing;
+
+  private volatile long startNanos;
+  private volatile long stopNanos;
+  private volatile long prepareBusyNanos;
+  private volatile long prepareStallNanos;
+  private volatile long processBusyNanos;
+  private volatile long processStallNanos;
+  private volatile long preparedCount;
+  private volatile long processedCount;
+  // Offer may be called from several threads, the other counters only change on their stage.
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  /**
+   * @param first One of the two buffers.
+   * @param second The other buffer.
+   * @param inputCapacity How many submitted inputs may wait for the prepare stage.
+   */
+  public DoubleBufferedPipeline(
+      B first,
+      B second,
+      Preparer<I, B> preparer,
+      Processor<B, R> processor,
+      Listener<I, R> listener,
+      int inputCapacity) {
+    this.preparer = preparer;
+    this.processor = processor;
+    this.listener = listener;
+    inputs = new ArrayBlockingQueue<I>(inputCapacity);
+    freeSlots.add(new Slot<I, B>(first));
+    freeSlots.add(new Slot<I, B>(second));
+    prepareThread = new Thread(this::runPrepareStage, "pipeline-prepare");
+    processThread = new Thread(this::runProcessStage, "pipeline-process");
+  }
+
+  /** Starts both stages. */
+  public DoubleBufferedPipeline<I, B, R> start() {
+    startNanos = System.nanoTime();
+    prepareThread.start();
+    processThread.start();
+    return this;
+  }
+
+  /**
+   * Queues {@code input} without blocking.
+   *
+   * @return False if the input queue is full and {@code input} was dropped.
+   */
+  public boolean offer(I input) {
+    if (inputs.offer(input)) {
+      return true;
+    }
+    droppedCount.incrementAndGet();
+    return false;
+  }
+
+  /** Queues {@code input}, waiting for room in the input queue. */
+  public void submit(I input) throws InterruptedException {
+    inputs.put(input);
+  }
+
+  /** Stops both stages and waits for them; queued inputs are discarded. */
+  public void close() throws InterruptedException {
+    prepareThread.interrupt();
+    processThread.interrupt();
+    prepareThread.join();
+    processThread.join();
+    stopNanos = System.nanoTime();
+  }
+
+  private void runPrepareStage() {
+    try {
+      while (true) {
+        final I input = inputs.take();
+        preparing = true;
+        final long stallStart = System.nanoTime();
+        final Slot<I, B> slot = freeSlots.take();
+        final long busyStart = System.nanoTime();
+        prepareStallNanos += busyStart - stallStart;
+        try {
+          preparer.prepare(input, slot.buffer);
+        } catch (Exception e) {
+          freeSlots.put(slot);
+          preparing = false;
+          listener.onError(input, e);
+          continue;
+        } finally {
+          prepareBusyNanos += System.nanoTime() - busyStart;
+        }
+        slot.input = input;
+        preparedCount++;
+        preparedSlots.put(slot);
+        preparing = false;
+      }
+    } catch (InterruptedException e) {
+      // Closed.
+    }
+  }
+
+  private void runProcessStage() {
+    try {
+      while (true) {
+        // Only count waiting as a stall while there is work the prepare stage hasn't finished.
+        final boolean starved = preparedSlots.isEmpty() && (preparing || !inputs.isEmpty());
+        final long stallStart = System.nanoTime();
+        final Slot<I, B> slot = preparedSlots.take();
+        final long busyStart = System.nanoTime();
+        if (starved) {
+          processStallNanos += busyStart - stallStart;
+        }
+        final I input = slot.input;
+        R result = null;
+        Exception error = null;
+        try {
+          result = processor.process(slot.buffer);
+        } catch (Exception e) {
+          error = e;
+        }
+        processBusyNanos += System.nanoTime() - busyStart;
+        slot.input = null;
+        freeSlots.put(slot);
+        if (error != null) {
+          listener.onError(input, error);
+        } else {
+          processedCount++;
+          listener.onResult(input, result);
+        }
+      }
+    } catch (InterruptedException e) {
+      // Closed.
+    }
+  }
+
+  private long getElapsedNanos() {
+    if (startNanos == 0) {
+      return 0;
+    }
+    return (stopNanos != 0 ? stopNanos : System.nanoTime()) - startNanos;
+  }
+
+  /** Returns the fraction of time the prepare stage spent preparing. */
+  public float getPrepareOccupancy() {
+    final long elapsed = getElapsedNanos();
+    return elapsed == 0 ? 0 : (float) prepareBusyNanos / elapsed;
+  }
+
+  /** Returns the fraction of time the process stage spent processing. */
+  public float getProcessOccupancy() {
+    final long elapsed = getElapsedNanos();
+    return elapsed == 0 ? 0 : (float) processBusyNanos / elapsed;
+  }
+
+  /** Returns how long the prepare stage waited for a free buffer, in milliseconds. */
+  public long getPrepareStallMs() {
+    return TimeUnit.NANOSECONDS.toMillis(prepareStallNanos);
+  }
+
+  /** Returns how long the process stage waited for a prepared buffer, in milliseconds. */
+  public long getProcessStallMs() {
+    return TimeUnit.NANOSECONDS.toMillis(processStallNanos);
+  }
+
+  public long getPreparedCount() {
+    return preparedCount;
+  }
+
+  public long getProcessedCount() {
+    return processedCount;
+  }
+
+  /** Returns how many inputs {@link #offer} dropped because the input queue was full. */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /** Returns the processed inputs per second since {@link #start()}. */
+  public float getThroughput() {
+    final long elapsed = getElapsedNanos();
+    return elapsed == 0 ? 0 : processedCount * 1e9f / elapsed;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%.1f/s, prepare %.0f%% busy %d ms stalled, process %.0f%% busy %d ms stalled",
+        getThroughput(),
+        getPrepareOccupancy() * 100,
+        getPrepareStallMs(),
+        getProcessOccupancy() * 100,
+        getProcessStallMs());
+  }
+}
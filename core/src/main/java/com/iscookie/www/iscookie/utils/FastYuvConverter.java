@@ -0,0 +1,302 @@
+package com.iscookie.www.iscookie.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A faster pure Java YUV 4:2:0 to ARGB 8888 conversion, for when the native library is missing.
+ *
+ * <p>The output is identical to {@link YuvConverter}, which remains the reference. Three things
+ * make it faster:
+ *
+ * <ul>
+ *   <li>Rows are converted in pairs, so each U and V sample is read and weighted once for the four
+ *       pixels of its 2x2 block.
+ *   <li>The integer weights of every possible Y, U and V value come from tables, and one table
+ *       folds the clamping and the shift to eight bits into a single lookup.
+ *   <li>Frames of at least {@link #PARALLEL_THRESHOLD_PIXELS} are split into bands of row pairs
+ *       converted on a {@link ForkJoinPool}.
+ * </ul>
+ */
+public final class FastYuvConverter {
+
+  /** The smallest frame, in pixels, that is worth splitting across threads. */
+  public static final int PARALLEL_THRESHOLD_PIXELS = 640 * 480;
+
+  /** Bands of at most this many pixels are converted without splitting further. */
+  private static final int BAND_PIXELS = 64 * 1024;
+
+  private static final int[] Y_WEIGHT = new int[256];
+  private static final int[] RED_V_WEIGHT = new int[256];
+  private static final int[] GREEN_U_WEIGHT = new int[256];
+  private static final int[] GREEN_V_WEIGHT = new int[256];
+  private static final int[] BLUE_U_WEIGHT = new int[256];
+
+  /**
+   * Maps a weighted channel sum, shifted right by 10 and offset by {@link #CLAMP_OFFSET}, to its
+   * eight-bit value. Sums range from 2066 * -128 to 1192 * 239 + 2066 * 127, which the offset and
+   * length cover.
+   */
+  private static final int[] CLAMP = new int[1024];
+
+  private static final int CLAMP_OFFSET = 384;
+  private static final int CLAMP_SHIFT = 10;
+
+  static {
+    for (int value = 0; value < 256; ++value) {
+      // The same integer coefficients as YuvConverter.yuvToRgb.
+      Y_WEIGHT[value] = 1192 * Math.max(0, value - 16);
+      RED_V_WEIGHT[value] = 1634 * (value - 128);
+      GREEN_U_WEIGHT[value] = -400 * (value - 128);
+      GREEN_V_WEIGHT[value] = -833 * (value - 128);
+      BLUE_U_WEIGHT[value] = 2066 * (value - 128);
+    }
+    for (int i = 0; i < CLAMP.length; ++i) {
+      // Clamping to [0, 2^18) and keeping the top eight bits is clamping the shifted sum to [0, 255].
+      CLAMP[i] = Math.max(0, Math.min(255, i - CLAMP_OFFSET));
+    }
+  }
+
+  private static ForkJoinPool defaultPool;
+
+  private FastYuvConverter() {}
+
+  /** Returns a pool with one thread per core, created on first use. */
+  public static synchronized ForkJoinPool getDefaultPool() {
+    if (defaultPool == null) {
+      // Not ForkJoinPool.commonPool(), which needs API 24 on Android.
+      defaultPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+    return defaultPool;
+  }
+
+  /**
+   * Converts YUV 4:2:0 planes into ARGB 8888 pixels on the calling thread.
+   *
+   * @see YuvConverter#convertYUV420ToARGB8888(byte[], byte[], byte[], int, int, int, int, int, int[])
+   */
+  public static void convertYUV420ToARGB8888(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      int[] out) {
+    convertRows(
+        yData, uData, vData, width, yRowStride, uvRowStride, uvPixelStride, out, 0, height);
+  }
+
+  /**
+   * Converts YUV 4:2:0 planes into ARGB 8888 pixels, split across {@code pool} if the frame has
+   * at least {@link #PARALLEL_THRESHOLD_PIXELS}. Returns once the whole frame is converted.
+   */
+  public static void convertYUV420ToARGB8888(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] out,
+      ForkJoinPool pool) {
+    convert(
+        width,
+        height,
+        pool,
+        PARALLEL_THRESHOLD_PIXELS,
+        (startRow, endRow) ->
+            convertRows(
+                yData,
+                uData,
+                vData,
+                width,
+                yRowStride,
+                uvRowStride,
+                uvPixelStride,
+                out,
+                startRow,
+                endRow));
+  }
+
+  /**
+   * Converts the plane buffers of an {@code android.media.Image} in place, like {@link
+   * YuvConverter#convertYUV420ToARGB8888(ByteBuffer, ByteBuffer, ByteBuffer, int, int, int, int,
+   * int, int[])}, split across {@code pool} if the frame has at least {@link
+   * #PARALLEL_THRESHOLD_PIXELS}.
+   */
+  public static void convertYUV420ToARGB8888(
+      final ByteBuffer yData,
+      final ByteBuffer uData,
+      final ByteBuffer vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] out,
+      ForkJoinPool pool) {
+    convert(
+        width,
+        height,
+        pool,
+        PARALLEL_THRESHOLD_PIXELS,
+        (startRow, endRow) ->
+            convertRows(
+                yData,
+                uData,
+                vData,
+                width,
+                yRowStride,
+                uvRowStride,
+                uvPixelStride,
+                out,
+                startRow,
+                endRow));
+  }
+
+  /** Converts the rows {@code [startRow, endRow)}; {@code startRow} is even. */
+  interface RowConverter {
+    void convertRows(int startRow, int endRow);
+  }
+
+  /** Runs {@code rows} over the whole frame, in parallel bands if it is large enough. */
+  static void convert(
+      int width, int height, ForkJoinPool pool, int parallelThresholdPixels, RowConverter rows) {
+    if (pool == null || (long) width * height < parallelThresholdPixels) {
+      rows.convertRows(0, height);
+      return;
+    }
+    // Bands hold whole row pairs so no chroma row is shared between threads.
+    final int bandRows = Math.max(2, (BAND_PIXELS / Math.max(1, width)) & ~1);
+    pool.invoke(new Band(rows, 0, height, bandRows));
+  }
+
+  /** Splits a range of rows in halves at row pair boundaries until bands are small enough. */
+  private static final class Band extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final RowConverter rows;
+    private final int startRow;
+    private final int endRow;
+    private final int bandRows;
+
+    Band(RowConverter rows, int startRow, int endRow, int bandRows) {
+      this.rows = rows;
+      this.startRow = startRow;
+      this.endRow = endRow;
+      this.bandRows = bandRows;
+    }
+
+    @Override
+    protected void compute() {
+      if (endRow - startRow <= bandRows) {
+        rows.convertRows(startRow, endRow);
+        return;
+      }
+      final int middle = startRow + (((endRow - startRow) / 2) & ~1);
+      invokeAll(
+          new Band(rows, startRow, middle, bandRows), new Band(rows, middle, endRow, bandRows));
+    }
+  }
+
+  private static void convertRows(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      int[] out,
+      int startRow,
+      int endRow) {
+    final int[] yWeight = Y_WEIGHT;
+    final int[] clamp = CLAMP;
+    for (int row = startRow; row < endRow; row += 2) {
+      final boolean pair = row + 1 < endRow;
+      final int y0 = row * yRowStride;
+      final int y1 = y0 + yRowStride;
+      final int o0 = row * width;
+      final int o1 = o0 + width;
+      int uv = (row >> 1) * uvRowStride;
+      for (int x = 0; x < width; x += 2, uv += uvPixelStride) {
+        final int u = uData[uv] & 0xFF;
+        final int v = vData[uv] & 0xFF;
+        final int red = RED_V_WEIGHT[v];
+        final int green = GREEN_U_WEIGHT[u] + GREEN_V_WEIGHT[v];
+        final int blue = BLUE_U_WEIGHT[u];
+        final boolean second = x + 1 < width;
+
+        out[o0 + x] = toArgb(yWeight[yData[y0 + x] & 0xFF], red, green, blue, clamp);
+        if (second) {
+          out[o0 + x + 1] = toArgb(yWeight[yData[y0 + x + 1] & 0xFF], red, green, blue, clamp);
+        }
+        if (pair) {
+          out[o1 + x] = toArgb(yWeight[yData[y1 + x] & 0xFF], red, green, blue, clamp);
+          if (second) {
+            out[o1 + x + 1] = toArgb(yWeight[yData[y1 + x + 1] & 0xFF], red, green, blue, clamp);
+          }
+        }
+      }
+    }
+  }
+
+  private static void convertRows(
+      ByteBuffer yData,
+      ByteBuffer uData,
+      ByteBuffer vData,
+      int width,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      int[] out,
+      int startRow,
+      int endRow) {
+    final int yBase = yData.position();
+    final int uBase = uData.position();
+    final int vBase = vData.position();
+    final int[] yWeight = Y_WEIGHT;
+    final int[] clamp = CLAMP;
+    for (int row = startRow; row < endRow; row += 2) {
+      final boolean pair = row + 1 < endRow;
+      final int y0 = yBase + row * yRowStride;
+      final int y1 = y0 + yRowStride;
+      final int o0 = row * width;
+      final int o1 = o0 + width;
+      int uv = (row >> 1) * uvRowStride;
+      for (int x = 0; x < width; x += 2, uv += uvPixelStride) {
+        final int u = uData.get(uBase + uv) & 0xFF;
+        final int v = vData.get(vBase + uv) & 0xFF;
+        final int red = RED_V_WEIGHT[v];
+        final int green = GREEN_U_WEIGHT[u] + GREEN_V_WEIGHT[v];
+        final int blue = BLUE_U_WEIGHT[u];
+        final boolean second = x + 1 < width;
+
+        out[o0 + x] = toArgb(yWeight[yData.get(y0 + x) & 0xFF], red, green, blue, clamp);
+        if (second) {
+          out[o0 + x + 1] = toArgb(yWeight[yData.get(y0 + x + 1) & 0xFF], red, green, blue, clamp);
+        }
+        if (pair) {
+          out[o1 + x] = toArgb(yWeight[yData.get(y1 + x) & 0xFF], red, green, blue, clamp);
+          if (second) {
+            out[o1 + x + 1] =
+                toArgb(yWeight[yData.get(y1 + x + 1) & 0xFF], red, green, blue, clamp);
+          }
+        }
+      }
+    }
+  }
+
+  private static int toArgb(int luma, int red, int green, int blue, int[] clamp) {
+    return 0xff000000
+        | clamp[((luma + red) >> CLAMP_SHIFT) + CLAMP_OFFSET] << 16
+        | clamp[((luma + green) >> CLAMP_SHIFT) + CLAMP_OFFSET] << 8
+        | clamp[((luma + blue) >> CLAMP_SHIFT) + CLAMP_OFFSET];
+  }
+}
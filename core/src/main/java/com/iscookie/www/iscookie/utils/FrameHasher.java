@@ -0,0 +1,60 @@
+package com.iscookie.www.iscookie.utils;
+
+import java.util.Arrays;
+
+/**
+ * Computes a 64-bit difference hash (dHash) of an ARGB image.
+ *
+ * <p>The image is reduced to a 9x8 grid of average luminance and every bit records whether a cell
+ * is darker than its right neighbour. Near-duplicate frames, like the same plate photographed twice,
+ * differ in only a few bits, so the Hamming distance between two hashes measures how alike the
+ * frames are. Each cell averages every other pixel in both directions, which keeps a hash of a
+ * 224x224 image at about 12k pixel reads. Hashing allocates nothing.
+ */
+public final class FrameHasher {
+
+  private static final int GRID_WIDTH = 9;
+  private static final int GRID_HEIGHT = 8;
+  private static final int SAMPLE_STEP = 2;
+
+  private final int[] cellSums = new int[GRID_WIDTH * GRID_HEIGHT];
+  private final int[] cellCounts = new int[GRID_WIDTH * GRID_HEIGHT];
+
+  /**
+   * Hashes {@code pixels}, a row-major ARGB image of {@code width} x {@code height} pixels. Not
+   * thread safe, use one hasher per thread.
+   */
+  public long hash(int[] pixels, int width, int height) {
+    Arrays.fill(cellSums, 0);
+    Arrays.fill(cellCounts, 0);
+    for (int y = 0; y < height; y += SAMPLE_STEP) {
+      final int cellRow = (y * GRID_HEIGHT / height) * GRID_WIDTH;
+      final int rowStart = y * width;
+      for (int x = 0; x < width; x += SAMPLE_STEP) {
+        final int pixel = pixels[rowStart + x];
+        final int cell = cellRow + x * GRID_WIDTH / width;
+        // Integer BT.601 luma.
+        cellSums[cell] +=
+            (((pixel >> 16) & 0xff) * 77 + ((pixel >> 8) & 0xff) * 150 + (pixel & 0xff) * 29) >> 8;
+        cellCounts[cell]++;
+      }
+    }
+
+    long hash = 0;
+    for (int row = 0; row < GRID_HEIGHT; ++row) {
+      for (int col = 0; col < GRID_WIDTH - 1; ++col) {
+        final int cell = row * GRID_WIDTH + col;
+        // Compare averages without dividing: a/n < b/m  <=>  a*m < b*n.
+        final long left = (long) cellSums[cell] * cellCounts[cell + 1];
+        final long right = (long) cellSums[cell + 1] * cellCounts[cell];
+        hash = (hash << 1) | (left < right ? 1 : 0);
+      }
+    }
+    return hash;
+  }
+
+  /** Returns the number of bits in which two hashes differ. */
+  public static int distance(long a, long b) {
+    return Long.bitCount(a ^ b);
+  }
+}
@@ -0,0 +1,98 @@
+package com.iscookie.www.iscookie.utils;
+
+import java.util.Locale;
+
+/**
+ * Counts the frames of a live stream and how many of them were classified or dropped.
+ *
+ * <p>The achieved frame rate is measured over the last classified frames, so it follows changes in
+ * load within a second or two instead of averaging over the whole session. The drop rate is the
+ * share of all arrived frames that were discarded because inference was still busy. Frames are
+ * reported from the camera thread and classifications from the inference thread, so all methods
+ * are synchronized.
+ */
+public final class FrameRateMeter {
+
+  /** Number of classified frames the frame rate is averaged over when none is given. */
+  public static final int DEFAULT_WINDOW = 30;
+
+  /** Completion times of the last classified frames, as a ring. */
+  private final long[] completedNanos;
+
+  private int next;
+  private int filled;
+  private long arrived;
+  private long dropped;
+  private long classified;
+
+  public FrameRateMeter() {
+    this(DEFAULT_WINDOW);
+  }
+
+  /** @param window The number of classified frames the frame rate is averaged over, at least 2. */
+  public FrameRateMeter(int window) {
+    if (window < 2) {
+      throw new IllegalArgumentException("Window must hold at least 2 frames: " + window);
+    }
+    completedNanos = new long[window];
+  }
+
+  /** Counts a frame delivered by the camera, whether or not it gets classified. */
+  public synchronized void onFrameArrived() {
+    arrived++;
+  }
+
+  /** Counts an arrived frame that was discarded without classification. */
+  public synchronized void onFrameDropped() {
+    dropped++;
+  }
+
+  /** Counts an arrived frame whose classification finished at {@code nowNanos}. */
+  public synchronized void onFrameClassified(long nowNanos) {
+    classified++;
+    completedNanos[next] = nowNanos;
+    next = (next + 1) % completedNanos.length;
+    if (filled < completedNanos.length) {
+      filled++;
+    }
+  }
+
+  /** Returns the classified frames per second over the window, or 0 before two frames. */
+  public synchronized float getFramesPerSecond() {
+    if (filled < 2) {
+      return 0;
+    }
+    final long newest = completedNanos[(next + completedNanos.length - 1) % completedNanos.length];
+    final long oldest = completedNanos[filled < completedNanos.length ? 0 : next];
+    final long spanNanos = newest - oldest;
+    return spanNanos <= 0 ? 0 : (filled - 1) * 1e9f / spanNanos;
+  }
+
+  /** Returns the share of arrived frames that were dropped, in [0, 1]. */
+  public synchronized float getDropRate() {
+    return arrived == 0 ? 0 : (float) dropped / arrived;
+  }
+
+  public synchronized long getArrivedCount() {
+    return arrived;
+  }
+
+  public synchronized long getDroppedCount() {
+    return dropped;
+  }
+
+  public synchronized long getClassifiedCount() {
+    return classified;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        Locale.US,
+        "%.1f fps, %d of %d frames dropped (%.0f%%)",
+        getFramesPerSecond(),
+        dropped,
+        arrived,
+        getDropRate() * 100);
+  }
+}
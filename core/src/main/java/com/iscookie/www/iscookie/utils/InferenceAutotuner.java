@@ -0,0 +1,279 @@
+package com.iscookie.www.iscookie.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Benchmarks inference configurations and picks the fastest one that still classifies like a
+ * reference configuration.
+ *
+ * <p>Each candidate is opened through a {@link Backend}, warmed up, then timed over several runs
+ * on the same calibration input. Its median latency is compared against the other candidates, and
+ * its top label against the reference's best labels: quantized or delegated configurations only
+ * win if they agree with the reference. Candidates that fail to open, for example a delegate the
+ * device lacks, are skipped. The tuner holds no Android dependencies, so its decision rules can be
+ * tested with a fake backend.
+ */
+public final class InferenceAutotuner {
+
+  public static final int DEFAULT_WARM_UP_RUNS = 2;
+  public static final int DEFAULT_TIMED_RUNS = 5;
+
+  /** How many of the reference's best labels a candidate's top label may match. */
+  public static final int DEFAULT_AGREEMENT_RANK = 3;
+
+  /** A model, device and thread count to run inference with. */
+  public static final class Config {
+    private final String model;
+    private final String device;
+    private final int numThreads;
+
+    public Config(String model, String device, int numThreads) {
+      this.model = model;
+      this.device = device;
+      this.numThreads = numThreads;
+    }
+
+    /** Parses the form produced by {@link #toString()}, or returns null if it is malformed. */
+    public static Config parse(String value) {
+      if (value == null) {
+        return null;
+      }
+      final String[] parts = value.split("/");
+      if (parts.length != 3) {
+        return null;
+      }
+      try {
+        return new Config(parts[0], parts[1], Integer.parseInt(parts[2]));
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    public String getModel() {
+      return model;
+    }
+
+    public String getDevice() {
+      return device;
+    }
+
+    public int getNumThreads() {
+      return numThreads;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Config)) {
+        return false;
+      }
+      final Config other = (Config) o;
+      return model.equals(other.model)
+          && device.equals(other.device)
+          && numThreads == other.numThreads;
+    }
+
+    @Override
+    public int hashCode() {
+      return (model.hashCode() * 31 + device.hashCode()) * 31 + numThreads;
+    }
+
+    @Override
+    public String toString() {
+      return model + "/" + device + "/" + numThreads;
+    }
+  }
+
+  /** Opens sessions that run the calibration input with a given configuration. */
+  public interface Backend {
+    Session open(Config config) throws Exception;
+  }
+
+  /** A loaded configuration ready to classify the calibration input. */
+  public interface Session {
+    /**
+     * Classifies the calibration input once.
+     *
+     * @return The time the inference took, in nanoseconds.
+     */
+    long run() throws Exception;
+
+    /** Returns the label indices of the last run, best first. */
+    int[] getTopLabels();
+
+    void close();
+  }
+
+  /** The outcome of benchmarking one candidate. */
+  public static final class Measurement {
+    private final Config config;
+    private final long medianNanos;
+    private final boolean agrees;
+    private final Exception error;
+
+    Measurement(Config config, long medianNanos, boolean agrees, Exception error) {
+      this.config = config;
+      this.medianNanos = medianNanos;
+      this.agrees = agrees;
+      this.error = error;
+    }
+
+    public Config getConfig() {
+      return config;
+    }
+
+    /** Returns the median latency of the timed runs, or -1 if the candidate failed. */
+    public long getMedianNanos() {
+      return medianNanos;
+    }
+
+    /** Whether the candidate's top label is among the reference's best labels. */
+    public boolean agrees() {
+      return agrees;
+    }
+
+    /** Returns why the candidate could not be benchmarked, or null. */
+    public Exception getError() {
+      return error;
+    }
+
+    @Override
+    public String toString() {
+      if (error != null) {
+        return config + ": failed (" + error + ")";
+      }
+      return String.format(
+          "%s: %.2f ms%s", config, medianNanos / 1e6f, agrees ? "" : " (disagrees)");
+    }
+  }
+
+  /** The chosen configuration and the measurements it was chosen from. */
+  public static final class Result {
+    private final Config best;
+    private final List<Measurement> measurements;
+
+    Result(Config best, List<Measurement> measurements) {
+      this.best = best;
+      this.measurements = Collections.unmodifiableList(measurements);
+    }
+
+    /** Returns the fastest agreeing configuration, or null if not even the reference ran. */
+    public Config getBest() {
+      return best;
+    }
+
+    public List<Measurement> getMeasurements() {
+      return measurements;
+    }
+  }
+
+  private final Backend backend;
+  private final Config reference;
+  private final int warmUpRuns;
+  private final int timedRuns;
+  private final int agreementRank;
+
+  public InferenceAutotuner(Backend backend, Config reference) {
+    this(backend, reference, DEFAULT_WARM_UP_RUNS, DEFAULT_TIMED_RUNS, DEFAULT_AGREEMENT_RANK);
+  }
+
+  /**
+   * @param backend Runs the calibration input.
+   * @param reference The configuration whose labels count as correct, usually the float model on
+   *     the CPU.
+   * @param warmUpRuns Untimed runs per candidate before measuring.
+   * @param timedRuns Timed runs per candidate; the median is compared.
+   * @param agreementRank How many of the reference's best labels a candidate's top label may match.
+   */
+  public InferenceAutotuner(
+      Backend backend, Config reference, int warmUpRuns, int timedRuns, int agreementRank) {
+    if (timedRuns < 1 || agreementRank < 1) {
+      throw new IllegalArgumentException("Timed runs and agreement rank must be positive.");
+    }
+    this.backend = backend;
+    this.reference = reference;
+    this.warmUpRuns = warmUpRuns;
+    this.timedRuns = timedRuns;
+    this.agreementRank = agreementRank;
+  }
+
+  /**
+   * Benchmarks the reference and every candidate and picks the agreeing configuration with the
+   * lowest median latency. Ties go to fewer threads, then to the earlier candidate.
+   */
+  public Result tune(List<Config> candidates) {
+    final List<Measurement> measurements = new ArrayList<Measurement>(candidates.size() + 1);
+    final int[] referenceLabels = new int[agreementRank];
+    final Measurement referenceMeasurement = measure(reference, null, referenceLabels);
+    measurements.add(referenceMeasurement);
+    if (referenceMeasurement.error != null) {
+      return new Result(null, measurements);
+    }
+
+    Measurement best = referenceMeasurement;
+    for (final Config candidate : candidates) {
+      if (candidate.equals(reference)) {
+        continue;
+      }
+      final Measurement measurement = measure(candidate, referenceLabels, null);
+      measurements.add(measurement);
+      if (measurement.error == null && measurement.agrees && isFaster(measurement, best)) {
+        best = measurement;
+      }
+    }
+    return new Result(best.config, measurements);
+  }
+
+  private static boolean isFaster(Measurement candidate, Measurement best) {
+    if (candidate.medianNanos != best.medianNanos) {
+      return candidate.medianNanos < best.medianNanos;
+    }
+    return candidate.config.numThreads < best.config.numThreads;
+  }
+
+  /**
+   * Benchmarks {@code config}. Its top labels are either checked against {@code referenceLabels}
+   * or, for the reference itself, copied into {@code labelsOut}.
+   */
+  private Measurement measure(Config config, int[] referenceLabels, int[] labelsOut) {
+    Session session = null;
+    try {
+      session = backend.open(config);
+      for (int i = 0; i < warmUpRuns; ++i) {
+        session.run();
+      }
+      final long[] timings = new long[timedRuns];
+      for (int i = 0; i < timedRuns; ++i) {
+        timings[i] = session.run();
+      }
+      Arrays.sort(timings);
+      final int[] topLabels = session.getTopLabels();
+      final boolean agrees;
+      if (labelsOut != null) {
+        Arrays.fill(labelsOut, -1);
+        System.arraycopy(topLabels, 0, labelsOut, 0, Math.min(topLabels.length, labelsOut.length));
+        agrees = true;
+      } else {
+        agrees = topLabels.length > 0 && contains(referenceLabels, topLabels[0]);
+      }
+      return new Measurement(config, timings[(timedRuns - 1) / 2], agrees, null);
+    } catch (Exception e) {
+      return new Measurement(config, -1, false, e);
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+  }
+
+  private static boolean contains(int[] labels, int label) {
+    for (final int candidate : labels) {
+      if (candidate == label) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
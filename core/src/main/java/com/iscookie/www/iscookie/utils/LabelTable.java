@@ -0,0 +1,220 @@
+package com.iscookie.www.iscookie.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * An immutable, compact table of model labels.
+ *
+ * <p>All titles live in one char array indexed by an offsets array, so the table costs a few
+ * objects instead of one String per label. Ids are built once, title Strings are created on first
+ * use and then reused, and a title is mapped back to its index through an open-addressing hash
+ * over the char array. Tables are shared process-wide through {@link #getOrLoad}, so every
+ * classifier reading the same label file uses the same instance. Lookups allocate nothing after
+ * the first access of a title and are safe from any thread.
+ */
+public final class LabelTable {
+
+  private static final Map<String, LabelTable> TABLES = new HashMap<String, LabelTable>();
+
+  private static final int EMPTY_SLOT = -1;
+
+  private final char[] chars;
+  private final int[] offsets;
+  private final String[] ids;
+  private final String[] titles;
+  private final int[] slots;
+  private final List<String> titleList;
+
+  private LabelTable(char[] chars, int[] offsets, int size) {
+    this.chars = chars;
+    this.offsets = offsets;
+    ids = new String[size];
+    titles = new String[size];
+    for (int i = 0; i < size; ++i) {
+      ids[i] = String.valueOf(i);
+    }
+    // Keep the load factor between 1/4 and 1/2 so probe sequences stay short.
+    slots = new int[Integer.highestOneBit(Math.max(1, size) * 2) << 1];
+    Arrays.fill(slots, EMPTY_SLOT);
+    for (int i = 0; i < size; ++i) {
+      int slot = hash(chars, offsets[i], offsets[i + 1]) & (slots.length - 1);
+      while (slots[slot] != EMPTY_SLOT) {
+        slot = (slot + 1) & (slots.length - 1);
+      }
+      slots[slot] = i;
+    }
+    titleList =
+        new AbstractList<String>() {
+          @Override
+          public String get(int index) {
+            return getTitle(index);
+          }
+
+          @Override
+          public int size() {
+            return ids.length;
+          }
+
+          @Override
+          public int indexOf(Object o) {
+            return o instanceof String ? LabelTable.this.indexOf((String) o) : -1;
+          }
+        };
+  }
+
+  /**
+   * Returns the table registered under {@code key}, reading it from {@code source} the first time.
+   *
+   * @param key Identifies the label file, usually its asset path.
+   * @param source Opens the label file, one label per line. Only called on the first load.
+   */
+  public static LabelTable getOrLoad(String key, Callable<InputStream> source) throws IOException {
+    synchronized (TABLES) {
+      LabelTable table = TABLES.get(key);
+      if (table == null) {
+        final InputStream in;
+        try {
+          in = source.call();
+        } catch (IOException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new IOException("Failed to open labels " + key, e);
+        }
+        table = read(in);
+        TABLES.put(key, table);
+      }
+      return table;
+    }
+  }
+
+  /** Reads a table with one label per line from {@code in} and closes it. */
+  public static LabelTable read(InputStream in) throws IOException {
+    final Reader reader = new InputStreamReader(in, "UTF-8");
+    char[] text = new char[16 * 1024];
+    int length = 0;
+    try {
+      int read;
+      while ((read = reader.read(text, length, text.length - length)) != -1) {
+        length += read;
+        if (length == text.length) {
+          text = Arrays.copyOf(text, text.length * 2);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+
+    // Compact the text in place, dropping line terminators and recording where each label starts.
+    int[] offsets = new int[256];
+    int size = 0;
+    int end = 0;
+    int lineStart = 0;
+    for (int i = 0; i <= length; ++i) {
+      if (i < length && text[i] != '\n') {
+        continue;
+      }
+      int lineEnd = i;
+      if (lineEnd > lineStart && text[lineEnd - 1] == '\r') {
+        lineEnd--;
+      }
+      if (i < length || lineEnd > lineStart) {
+        if (size + 1 >= offsets.length) {
+          offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[size++] = end;
+        System.arraycopy(text, lineStart, text, end, lineEnd - lineStart);
+        end += lineEnd - lineStart;
+      }
+      lineStart = i + 1;
+    }
+    offsets[size] = end;
+    return new LabelTable(Arrays.copyOf(text, end), Arrays.copyOf(offsets, size + 1), size);
+  }
+
+  /** Builds a table holding {@code labels}, mainly for tests and tools. */
+  public static LabelTable of(List<String> labels) {
+    int length = 0;
+    for (final String label : labels) {
+      length += label.length();
+    }
+    final char[] chars = new char[length];
+    final int[] offsets = new int[labels.size() + 1];
+    int end = 0;
+    for (int i = 0; i < labels.size(); ++i) {
+      final String label = labels.get(i);
+      offsets[i] = end;
+      label.getChars(0, label.length(), chars, end);
+      end += label.length();
+    }
+    offsets[labels.size()] = end;
+    return new LabelTable(chars, offsets, labels.size());
+  }
+
+  /** Returns the number of labels. */
+  public int size() {
+    return ids.length;
+  }
+
+  /** Returns the title of the label at {@code index}. */
+  public String getTitle(int index) {
+    String title = titles[index];
+    if (title == null) {
+      // Racing threads may both build the title; either copy is equally valid.
+      title = new String(chars, offsets[index], offsets[index + 1] - offsets[index]);
+      titles[index] = title;
+    }
+    return title;
+  }
+
+  /** Returns the recognition id of the label at {@code index}. */
+  public String getId(int index) {
+    return ids[index];
+  }
+
+  /** Returns the index of the label titled {@code title}, or -1 if there is none. */
+  public int indexOf(String title) {
+    final int length = title.length();
+    int slot = title.hashCode() & (slots.length - 1);
+    while (slots[slot] != EMPTY_SLOT) {
+      final int index = slots[slot];
+      final int start = offsets[index];
+      if (offsets[index + 1] - start == length && regionMatches(title, start)) {
+        return index;
+      }
+      slot = (slot + 1) & (slots.length - 1);
+    }
+    return -1;
+  }
+
+  /** Returns a read-only list view of the titles. */
+  public List<String> asList() {
+    return titleList;
+  }
+
+  private boolean regionMatches(String title, int start) {
+    for (int i = 0; i < title.length(); ++i) {
+      if (chars[start + i] != title.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Same as {@link String#hashCode()} of the chars in [start, end). */
+  private static int hash(char[] chars, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; ++i) {
+      hash = 31 * hash + chars[i];
+    }
+    return hash;
+  }
+}
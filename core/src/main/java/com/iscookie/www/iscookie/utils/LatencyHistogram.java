@@ -0,0 +1,177 @@
+package com.iscookie.www.iscookie.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, lock-free histogram of latencies.
+ *
+ * <p>Latencies are recorded in microseconds into logarithmic buckets: every power of two is split
+ * into {@value #SUB_BUCKETS} linear sub-buckets, so a reported percentile is at most 25% above the
+ * true value, from 1 us up to hours. Recording is a few atomic increments and allocates nothing,
+ * so histograms can stay on in release builds; only {@link #snapshot()} allocates.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /** Powers of two up to 2^40 us, about 12 days; larger values land in the last bucket. */
+  private static final int MAX_EXPONENT = 40;
+
+  /** Values below {@link #SUB_BUCKETS} get exact buckets, every exponent above them a set each. */
+  private static final int NUM_BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  /** An immutable view of a histogram at one point in time. */
+  public static final class Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long totalMicros;
+    private final long maxMicros;
+
+    Snapshot(long[] counts, long count, long totalMicros, long maxMicros) {
+      this.counts = counts;
+      this.count = count;
+      this.totalMicros = totalMicros;
+      this.maxMicros = maxMicros;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    /** Returns the sum of all recorded latencies, in microseconds. */
+    public long getTotalMicros() {
+      return totalMicros;
+    }
+
+    public long getMaxMicros() {
+      return maxMicros;
+    }
+
+    public long getMeanMicros() {
+      return count == 0 ? 0 : totalMicros / count;
+    }
+
+    /**
+     * Returns an upper bound of the latency below which {@code percentile} percent of the recorded
+     * latencies fall, in microseconds, or 0 if nothing was recorded.
+     */
+    public long getPercentileMicros(double percentile) {
+      long total = 0;
+      for (final long bucketCount : counts) {
+        total += bucketCount;
+      }
+      if (total == 0) {
+        return 0;
+      }
+      final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+      long seen = 0;
+      for (int bucket = 0; bucket < counts.length; ++bucket) {
+        seen += counts[bucket];
+        if (seen >= rank) {
+          return Math.min(getBucketUpperBound(bucket), maxMicros);
+        }
+      }
+      return maxMicros;
+    }
+
+    public long getP50Micros() {
+      return getPercentileMicros(50);
+    }
+
+    public long getP90Micros() {
+      return getPercentileMicros(90);
+    }
+
+    public long getP99Micros() {
+      return getPercentileMicros(99);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "n=%d p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+          count,
+          getP50Micros() / 1000f,
+          getP90Micros() / 1000f,
+          getP99Micros() / 1000f,
+          maxMicros / 1000f);
+    }
+  }
+
+  /** Records a latency given in nanoseconds. Negative values count as zero. */
+  public void recordNanos(long nanos) {
+    recordMicros(nanos / 1000);
+  }
+
+  /** Records a latency given in microseconds. Negative values count as zero. */
+  public void recordMicros(long micros) {
+    final long value = Math.max(0, micros);
+    buckets.incrementAndGet(getBucket(value));
+    count.incrementAndGet();
+    totalMicros.addAndGet(value);
+    long max = maxMicros.get();
+    while (value > max) {
+      if (maxMicros.compareAndSet(max, value)) {
+        break;
+      }
+      max = maxMicros.get();
+    }
+  }
+
+  /**
+   * Copies the current state. Concurrent recordings may be partially included, so the count can
+   * differ slightly from the bucket totals.
+   */
+  public Snapshot snapshot() {
+    final long[] counts = new long[NUM_BUCKETS];
+    for (int bucket = 0; bucket < NUM_BUCKETS; ++bucket) {
+      counts[bucket] = buckets.get(bucket);
+    }
+    return new Snapshot(counts, count.get(), totalMicros.get(), maxMicros.get());
+  }
+
+  /** Returns the number of recorded latencies. */
+  public long getCount() {
+    return count.get();
+  }
+
+  /** Forgets all recorded latencies. */
+  public void reset() {
+    for (int bucket = 0; bucket < NUM_BUCKETS; ++bucket) {
+      buckets.set(bucket, 0);
+    }
+    count.set(0);
+    totalMicros.set(0);
+    maxMicros.set(0);
+  }
+
+  static int getBucket(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    if (exponent > MAX_EXPONENT) {
+      return NUM_BUCKETS - 1;
+    }
+    final int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /** Returns the largest value that falls into {@code bucket}. */
+  static long getBucketUpperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    final long subBucket = bucket % SUB_BUCKETS;
+    final long width = 1L << (exponent - SUB_BUCKET_BITS);
+    return (1L << exponent) + (subBucket + 1) * width - 1;
+  }
+}
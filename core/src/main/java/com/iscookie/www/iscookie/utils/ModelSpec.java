@@ -0,0 +1,235 @@
+package com.iscookie.www.iscookie.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Describes a bundled image classification model: its files, input shape, input type and input
+ * normalization.
+ *
+ * <p>Specs are read from the {@code <name>_info.txt} manifest next to each model. A manifest holds
+ * "Key: value" lines:
+ *
+ * <pre>
+ * Model: mobilenet_v1_0.75_160_quant   name, model file is name + ".tflite" unless File is set
+ * File: custom.tflite                  optional
+ * Labels: labels.txt                   optional, defaults to labels.txt
+ * Size: 160                            input width and height, or WxH
+ * Type: uint8                          uint8 or float32
+ * Mean: 127.5                          float inputs only, one value or one per channel
+ * Std: 127.5                           float inputs only, one value or one per channel
+ * </pre>
+ *
+ * Size and Type may be omitted for MobileNet-style names, which end in the input size and carry a
+ * "_quant" suffix for uint8 models. Unknown keys, like Input and Output, are ignored.
+ */
+public final class ModelSpec {
+
+  /** The type of the model's input and output tensors. */
+  public enum DataType {
+    FLOAT32(4),
+    UINT8(1);
+
+    private final int bytesPerChannel;
+
+    DataType(int bytesPerChannel) {
+      this.bytesPerChannel = bytesPerChannel;
+    }
+
+    public int getBytesPerChannel() {
+      return bytesPerChannel;
+    }
+  }
+
+  public static final String INFO_SUFFIX = "_info.txt";
+
+  private static final String DEFAULT_LABELS = "labels.txt";
+
+  /** MobileNet float models expect inputs normalized to [-1, 1]. */
+  private static final float DEFAULT_FLOAT_MEAN = 127.5f;
+
+  private static final float DEFAULT_FLOAT_STD = 127.5f;
+
+  /** Matches names like mobilenet_v1_1.0_224 and mobilenet_v2_0.5_128_quant. */
+  private static final Pattern MOBILENET_NAME = Pattern.compile(".*_(\\d+)(_quant)?$");
+
+  private final String name;
+  private final String modelPath;
+  private final String labelPath;
+  private final int inputWidth;
+  private final int inputHeight;
+  private final DataType dataType;
+  private final float[] mean;
+  private final float[] std;
+
+  public ModelSpec(
+      String name,
+      String modelPath,
+      String labelPath,
+      int inputWidth,
+      int inputHeight,
+      DataType dataType,
+      float[] mean,
+      float[] std) {
+    if (inputWidth < 1 || inputHeight < 1) {
+      throw new IllegalArgumentException("Input size of " + name + " must be positive.");
+    }
+    this.name = name;
+    this.modelPath = modelPath;
+    this.labelPath = labelPath;
+    this.inputWidth = inputWidth;
+    this.inputHeight = inputHeight;
+    this.dataType = dataType;
+    this.mean = mean.clone();
+    this.std = std.clone();
+  }
+
+  /**
+   * Parses a model manifest.
+   *
+   * @param infoPath The manifest's asset path; names the model if the manifest doesn't.
+   * @throws IOException if the manifest can't be read or leaves the input size or type unknown.
+   */
+  public static ModelSpec parse(String infoPath, InputStream in) throws IOException {
+    final Map<String, String> values = new HashMap<String, String>();
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final int colon = line.indexOf(':');
+        if (colon > 0) {
+          values.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+        }
+      }
+    } finally {
+      reader.close();
+    }
+
+    String name = values.get("Model");
+    if (name == null) {
+      name =
+          infoPath.endsWith(INFO_SUFFIX)
+              ? infoPath.substring(0, infoPath.length() - INFO_SUFFIX.length())
+              : infoPath;
+    }
+    final String modelPath = values.containsKey("File") ? values.get("File") : name + ".tflite";
+    final String labelPath = values.containsKey("Labels") ? values.get("Labels") : DEFAULT_LABELS;
+    final Matcher nameMatcher = MOBILENET_NAME.matcher(name);
+    final boolean mobileNetName = nameMatcher.matches();
+
+    final int width;
+    final int height;
+    final String size = values.get("Size");
+    try {
+      if (size != null) {
+        final int x = size.indexOf('x');
+        width = Integer.parseInt(x < 0 ? size : size.substring(0, x));
+        height = Integer.parseInt(x < 0 ? size : size.substring(x + 1));
+      } else if (mobileNetName) {
+        width = height = Integer.parseInt(nameMatcher.group(1));
+      } else {
+        throw new IOException("No input size for model " + name);
+      }
+    } catch (NumberFormatException e) {
+      throw new IOException("Malformed input size of model " + name + ": " + size);
+    }
+
+    final DataType dataType;
+    final String type = values.get("Type");
+    if (type != null) {
+      try {
+        dataType = DataType.valueOf(type.toUpperCase(Locale.US));
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Unknown input type of model " + name + ": " + type);
+      }
+    } else if (mobileNetName) {
+      dataType = nameMatcher.group(2) != null ? DataType.UINT8 : DataType.FLOAT32;
+    } else {
+      throw new IOException("No input type for model " + name);
+    }
+
+    final boolean quantized = dataType == DataType.UINT8;
+    return new ModelSpec(
+        name,
+        modelPath,
+        labelPath,
+        width,
+        height,
+        dataType,
+        parseChannels(name, values.get("Mean"), quantized ? 0.0f : DEFAULT_FLOAT_MEAN),
+        parseChannels(name, values.get("Std"), quantized ? 1.0f : DEFAULT_FLOAT_STD));
+  }
+
+  private static float[] parseChannels(String name, String value, float defaultValue)
+      throws IOException {
+    if (value == null) {
+      return new float[] {defaultValue, defaultValue, defaultValue};
+    }
+    final String[] parts = value.split("[,\\s]+");
+    try {
+      if (parts.length == 1) {
+        final float single = Float.parseFloat(parts[0]);
+        return new float[] {single, single, single};
+      } else if (parts.length == 3) {
+        return new float[] {
+          Float.parseFloat(parts[0]), Float.parseFloat(parts[1]), Float.parseFloat(parts[2])
+        };
+      }
+    } catch (NumberFormatException e) {
+      // Reported below.
+    }
+    throw new IOException("Malformed normalization of model " + name + ": " + value);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /** Returns the asset path of the .tflite file. */
+  public String getModelPath() {
+    return modelPath;
+  }
+
+  /** Returns the asset path of the label file, one label per output. */
+  public String getLabelPath() {
+    return labelPath;
+  }
+
+  public int getInputWidth() {
+    return inputWidth;
+  }
+
+  public int getInputHeight() {
+    return inputHeight;
+  }
+
+  public DataType getDataType() {
+    return dataType;
+  }
+
+  public boolean isQuantized() {
+    return dataType == DataType.UINT8;
+  }
+
+  /** Returns the per channel (red, green, blue) mean subtracted from float inputs. */
+  public float[] getMean() {
+    return mean.clone();
+  }
+
+  /** Returns the per channel (red, green, blue) standard deviation float inputs are divided by. */
+  public float[] getStd() {
+    return std.clone();
+  }
+
+  @Override
+  public String toString() {
+    return name + " (" + inputWidth + "x" + inputHeight + ", " + dataType + ")";
+  }
+}
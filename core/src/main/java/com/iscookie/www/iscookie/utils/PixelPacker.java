@@ -0,0 +1,156 @@
+package com.iscookie.www.iscookie.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Converts ARGB pixels into the interleaved RGB layout of a model input tensor in one pass.
+ *
+ * <p>Float models get each channel normalized as {@code (value - mean) / std} through a
+ * precomputed 256-entry table per channel, so no division happens per pixel. The channels are
+ * staged in a primitive array and written with a single bulk put, through a {@link FloatBuffer}
+ * view for float models. Quantized models take the raw channel bytes.
+ */
+public final class PixelPacker {
+
+  private static final int NUM_CHANNELS = 3;
+
+  private final boolean quantized;
+  private final float[] redTable;
+  private final float[] greenTable;
+  private final float[] blueTable;
+
+  private float[] floatStaging = new float[0];
+  private byte[] byteStaging = new byte[0];
+
+  /** The buffer {@link #floatView} was created for, to avoid a new view per frame. */
+  private ByteBuffer viewTarget;
+  private FloatBuffer floatView;
+
+  private PixelPacker(boolean quantized, float[] means, float[] stds) {
+    this.quantized = quantized;
+    if (quantized) {
+      redTable = greenTable = blueTable = null;
+    } else {
+      if (means.length != NUM_CHANNELS || stds.length != NUM_CHANNELS) {
+        throw new IllegalArgumentException("Expected one mean and std per RGB channel.");
+      }
+      redTable = buildTable(means[0], stds[0]);
+      greenTable = buildTable(means[1], stds[1]);
+      blueTable = buildTable(means[2], stds[2]);
+    }
+  }
+
+  /**
+   * Creates a packer for a float model.
+   *
+   * @param means The value subtracted from the red, green and blue channel.
+   * @param stds The value the red, green and blue channel are divided by after that.
+   */
+  public static PixelPacker forFloat(float[] means, float[] stds) {
+    return new PixelPacker(false, means, stds);
+  }
+
+  /** Creates a packer for a quantized model, which takes the raw channel values. */
+  public static PixelPacker forUint8() {
+    return new PixelPacker(true, null, null);
+  }
+
+  private static float[] buildTable(float mean, float std) {
+    final float[] table = new float[256];
+    for (int value = 0; value < table.length; ++value) {
+      table[value] = (value - mean) / std;
+    }
+    return table;
+  }
+
+  /** Whether this packer writes one byte per channel rather than one float. */
+  public boolean isQuantized() {
+    return quantized;
+  }
+
+  /** Returns the normalized values of the red channel, or null for a quantized model. */
+  float[] getRedTable() {
+    return redTable;
+  }
+
+  /** Returns the normalized values of the green channel, or null for a quantized model. */
+  float[] getGreenTable() {
+    return greenTable;
+  }
+
+  /** Returns the normalized values of the blue channel, or null for a quantized model. */
+  float[] getBlueTable() {
+    return blueTable;
+  }
+
+  /** Returns the number of bytes {@code numPixels} pixels occupy in the input tensor. */
+  public int getPackedSize(int numPixels) {
+    return numPixels * NUM_CHANNELS * (quantized ? 1 : 4);
+  }
+
+  /**
+   * Writes {@code pixels[0..count)} into {@code out} at its current position and advances the
+   * position past the written values.
+   *
+   * @param pixels ARGB pixels as returned by {@code Bitmap.getPixels}.
+   * @param count The number of pixels to convert.
+   * @param out The input tensor buffer, in native byte order for float models.
+   */
+  public void pack(int[] pixels, int count, ByteBuffer out) {
+    if (quantized) {
+      packUint8(pixels, count, out);
+    } else {
+      packFloat(pixels, count, out);
+    }
+  }
+
+  private void packFloat(int[] pixels, int count, ByteBuffer out) {
+    final int length = count * NUM_CHANNELS;
+    if (floatStaging.length < length) {
+      floatStaging = new float[length];
+    }
+    final float[] staging = floatStaging;
+    final float[] red = redTable;
+    final float[] green = greenTable;
+    final float[] blue = blueTable;
+    for (int i = 0, j = 0; i < count; ++i, j += NUM_CHANNELS) {
+      final int pixel = pixels[i];
+      staging[j] = red[(pixel >> 16) & 0xFF];
+      staging[j + 1] = green[(pixel >> 8) & 0xFF];
+      staging[j + 2] = blue[pixel & 0xFF];
+    }
+    final int start = out.position();
+    final FloatBuffer view = getFloatView(out);
+    view.position(start / 4);
+    view.put(staging, 0, length);
+    out.position(start + length * 4);
+  }
+
+  private void packUint8(int[] pixels, int count, ByteBuffer out) {
+    final int length = count * NUM_CHANNELS;
+    if (byteStaging.length < length) {
+      byteStaging = new byte[length];
+    }
+    final byte[] staging = byteStaging;
+    for (int i = 0, j = 0; i < count; ++i, j += NUM_CHANNELS) {
+      final int pixel = pixels[i];
+      staging[j] = (byte) (pixel >> 16);
+      staging[j + 1] = (byte) (pixel >> 8);
+      staging[j + 2] = (byte) pixel;
+    }
+    out.put(staging, 0, length);
+  }
+
+  /** Returns a float view over all of {@code out}, reusing the previous one for the same buffer. */
+  private FloatBuffer getFloatView(ByteBuffer out) {
+    if (viewTarget != out) {
+      final int position = out.position();
+      out.position(0);
+      floatView = out.asFloatBuffer();
+      out.position(position);
+      viewTarget = out;
+    }
+    return floatView;
+  }
+}
@@ -0,0 +1,190 @@
+package com.iscookie.www.iscookie.utils;
+
+import java.util.Arrays;
+
+/**
+ * A small LRU cache of classification results keyed by {@link FrameHasher} hashes.
+ *
+ * <p>A lookup matches the most similar cached frame within a Hamming distance, so re-classifying
+ * the same scene returns the earlier results instead of running inference again. Entries expire
+ * after a time-to-live and the least recently used entry is evicted when the cache is full. All
+ * storage is preallocated, so lookups and insertions allocate nothing. The cache is not thread
+ * safe; it belongs to the classifier that fills it.
+ */
+public final class RecognitionCache {
+
+  private static final long EMPTY = -1;
+
+  private final int maxDistance;
+  private final long ttlMs;
+
+  private final long[] hashes;
+  private final long[] storedAtMs;
+  private final long[] lastUsedMs;
+  private final int[] resultCounts;
+  private final int[] confidentCounts;
+  private final int[][] labelIndices;
+  private final float[][] confidences;
+  private final TargetDecision[] targetDecisions;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * @param capacity The number of frames to remember.
+   * @param maxResults The number of results stored per frame.
+   * @param maxDistance The largest Hamming distance between two hashes that still counts as a hit.
+   * @param ttlMs How long an entry stays valid after it was stored, in milliseconds.
+   */
+  public RecognitionCache(int capacity, int maxResults, int maxDistance, long ttlMs) {
+    if (capacity < 1 || maxResults < 1) {
+      throw new IllegalArgumentException("Capacity and result count must be positive.");
+    }
+    this.maxDistance = maxDistance;
+    this.ttlMs = ttlMs;
+    hashes = new long[capacity];
+    storedAtMs = new long[capacity];
+    lastUsedMs = new long[capacity];
+    resultCounts = new int[capacity];
+    confidentCounts = new int[capacity];
+    labelIndices = new int[capacity][maxResults];
+    confidences = new float[capacity][maxResults];
+    targetDecisions = new TargetDecision[capacity];
+    Arrays.fill(storedAtMs, EMPTY);
+  }
+
+  /**
+   * Finds the valid entry closest to {@code hash} and marks it as recently used.
+   *
+   * @return The slot of the entry, to be read with the getters, or -1 on a miss.
+   */
+  public int lookup(long hash, long nowMs) {
+    int best = -1;
+    int bestDistance = maxDistance + 1;
+    for (int slot = 0; slot < hashes.length; ++slot) {
+      if (!isValid(slot, nowMs)) {
+        continue;
+      }
+      final int distance = FrameHasher.distance(hash, hashes[slot]);
+      if (distance < bestDistance) {
+        best = slot;
+        bestDistance = distance;
+      }
+    }
+    if (best < 0) {
+      misses++;
+    } else {
+      hits++;
+      lastUsedMs[best] = nowMs;
+    }
+    return best;
+  }
+
+  /**
+   * Stores the results of a frame, replacing an empty or expired entry, or else the least recently
+   * used one.
+   *
+   * @param count The number of results, ordered by descending confidence.
+   * @param resultLabels The label index of each result.
+   * @param resultConfidences The confidence of each result.
+   * @param confidentCount How many of the leading results passed the confidence threshold.
+   */
+  public void put(
+      long hash,
+      long nowMs,
+      int count,
+      int[] resultLabels,
+      float[] resultConfidences,
+      int confidentCount) {
+    put(hash, nowMs, count, resultLabels, resultConfidences, confidentCount, null);
+  }
+
+  /**
+   * Stores the results of a frame along with its target decision, which may be null.
+   *
+   * @see #put(long, long, int, int[], float[], int)
+   */
+  public void put(
+      long hash,
+      long nowMs,
+      int count,
+      int[] resultLabels,
+      float[] resultConfidences,
+      int confidentCount,
+      TargetDecision targetDecision) {
+    int slot = 0;
+    for (int candidate = 0; candidate < hashes.length; ++candidate) {
+      if (!isValid(candidate, nowMs)) {
+        slot = candidate;
+        break;
+      }
+      if (lastUsedMs[candidate] < lastUsedMs[slot]) {
+        slot = candidate;
+      }
+    }
+    if (isValid(slot, nowMs)) {
+      evictions++;
+    }
+    final int stored = Math.min(count, labelIndices[slot].length);
+    hashes[slot] = hash;
+    storedAtMs[slot] = nowMs;
+    lastUsedMs[slot] = nowMs;
+    resultCounts[slot] = stored;
+    confidentCounts[slot] = Math.min(confidentCount, stored);
+    System.arraycopy(resultLabels, 0, labelIndices[slot], 0, stored);
+    System.arraycopy(resultConfidences, 0, confidences[slot], 0, stored);
+    targetDecisions[slot] = targetDecision;
+  }
+
+  private boolean isValid(int slot, long nowMs) {
+    return storedAtMs[slot] != EMPTY && nowMs - storedAtMs[slot] <= ttlMs;
+  }
+
+  /** Returns the number of results stored in {@code slot}. */
+  public int getResultCount(int slot) {
+    return resultCounts[slot];
+  }
+
+  /** Returns how many leading results of {@code slot} passed the confidence threshold. */
+  public int getConfidentCount(int slot) {
+    return confidentCounts[slot];
+  }
+
+  public int getLabelIndex(int slot, int rank) {
+    return labelIndices[slot][rank];
+  }
+
+  public float getConfidence(int slot, int rank) {
+    return confidences[slot][rank];
+  }
+
+  /** Returns the target decision stored in {@code slot}, or null if none was stored. */
+  public TargetDecision getTargetDecision(int slot) {
+    return targetDecisions[slot];
+  }
+
+  /** Drops all entries; counters are kept. */
+  public void clear() {
+    Arrays.fill(storedAtMs, EMPTY);
+    Arrays.fill(targetDecisions, null);
+  }
+
+  public long getHitCount() {
+    return hits;
+  }
+
+  public long getMissCount() {
+    return misses;
+  }
+
+  public long getEvictionCount() {
+    return evictions;
+  }
+
+  /** Returns the fraction of lookups that were hits, or 0 before the first lookup. */
+  public float getHitRate() {
+    final long lookups = hits + misses;
+    return lookups == 0 ? 0 : (float) hits / lookups;
+  }
+}
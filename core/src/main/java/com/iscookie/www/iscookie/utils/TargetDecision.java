@@ -0,0 +1,31 @@
+package com.iscookie.www.iscookie.utils;
+
+/** An immutable answer to whether an image shows the target described by a {@link TargetSpec}. */
+public final class TargetDecision {
+
+  private final float score;
+  private final boolean target;
+
+  public TargetDecision(float score, boolean target) {
+    this.score = score;
+    this.target = target;
+  }
+
+  /**
+   * Returns the summed probability of the target labels. The sum stops as soon as it crosses the
+   * threshold, so for positive decisions this is a lower bound.
+   */
+  public float getScore() {
+    return score;
+  }
+
+  /** Whether the target labels scored above the threshold. */
+  public boolean isTarget() {
+    return target;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s (%.1f%%)", target ? "target" : "not target", score * 100.0f);
+  }
+}
@@ -0,0 +1,107 @@
+package com.iscookie.www.iscookie.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The set of model labels that count as the target item, compiled once against the label list.
+ *
+ * <p>The app only asks whether an image shows the target, so instead of ranking all labels the
+ * classifier sums the probabilities of these labels alone (see {@code Classifier.decide()}). The
+ * labels are listed in an asset, which makes the target configurable without code changes.
+ */
+public final class TargetSpec {
+
+  private final BitSet labelSet;
+  private final int[] labelIndices;
+  private final float threshold;
+
+  private TargetSpec(BitSet labelSet, float threshold) {
+    this.labelSet = labelSet;
+    this.threshold = threshold;
+    labelIndices = new int[labelSet.cardinality()];
+    for (int i = labelSet.nextSetBit(0), n = 0; i >= 0; i = labelSet.nextSetBit(i + 1)) {
+      labelIndices[n++] = i;
+    }
+  }
+
+  /**
+   * Compiles a spec from label titles or indices.
+   *
+   * @param labels The labels of the model.
+   * @param targets Entries naming the labels that count as the target, either by title or by
+   *     index into {@code labels}.
+   * @param threshold The aggregated score the target labels have to exceed.
+   * @throws IllegalArgumentException if an entry matches no label.
+   */
+  public static TargetSpec compile(
+      LabelTable labels, Collection<String> targets, float threshold) {
+    final BitSet labelSet = new BitSet(labels.size());
+    for (final String target : targets) {
+      int index = labels.indexOf(target);
+      if (index < 0) {
+        index = parseIndex(target, labels.size());
+      }
+      if (index < 0) {
+        throw new IllegalArgumentException("Unknown target label: " + target);
+      }
+      labelSet.set(index);
+    }
+    return new TargetSpec(labelSet, threshold);
+  }
+
+  private static int parseIndex(String target, int numLabels) {
+    try {
+      final int index = Integer.parseInt(target);
+      return index < numLabels ? index : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Reads target entries, one per line. Blank lines and lines starting with '#' are skipped.
+   */
+  public static List<String> readTitles(InputStream in) throws IOException {
+    final List<String> titles = new ArrayList<String>();
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (!line.isEmpty() && !line.startsWith("#")) {
+          titles.add(line);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return titles;
+  }
+
+  /** Whether the label at {@code labelIndex} counts as the target. */
+  public boolean contains(int labelIndex) {
+    return labelSet.get(labelIndex);
+  }
+
+  /** Returns the number of target labels. */
+  public int size() {
+    return labelIndices.length;
+  }
+
+  /** Returns the aggregated score the target labels have to exceed. */
+  public float getThreshold() {
+    return threshold;
+  }
+
+  /** Returns the target label indices in ascending order. Callers must not modify the array. */
+  int[] getLabelIndices() {
+    return labelIndices;
+  }
+}
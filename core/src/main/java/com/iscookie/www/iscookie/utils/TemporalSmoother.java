@@ -0,0 +1,136 @@
+package com.iscookie.www.iscookie.utils;
+
+import java.util.Arrays;
+
+/**
+ * Smooths the label probabilities of a stream of frames and reports the target decision only when
+ * it changes.
+ *
+ * <p>Each frame's probabilities are folded into an exponential moving average kept in a float
+ * array, and the target score is the sum of the smoothed target labels. The decision uses
+ * hysteresis: it switches to "target" once the score exceeds the target threshold and back only
+ * once it drops below a lower exit threshold, so a score hovering around the threshold doesn't
+ * flicker. Updates allocate nothing. Not thread safe.
+ */
+public final class TemporalSmoother {
+
+  /** Weight of the newest frame when none is given. */
+  public static final float DEFAULT_ALPHA = 0.3f;
+
+  private final float[] smoothed;
+  private final int[] targetLabels;
+  private final float enterThreshold;
+  private final float exitThreshold;
+  private final float alpha;
+
+  private boolean primed;
+  private boolean target;
+  private float targetScore;
+  private long frames;
+  private long changes;
+
+  /**
+   * @param numLabels The length of the probability vectors.
+   * @param targetSpec The labels to sum; its threshold is the score that switches to "target".
+   * @param exitThreshold The score below which the decision switches back to "not target".
+   * @param alpha The weight of the newest frame, in (0, 1]. 1 disables smoothing.
+   */
+  public TemporalSmoother(int numLabels, TargetSpec targetSpec, float exitThreshold, float alpha) {
+    if (alpha <= 0 || alpha > 1) {
+      throw new IllegalArgumentException("Alpha must be in (0, 1]: " + alpha);
+    }
+    if (exitThreshold > targetSpec.getThreshold()) {
+      throw new IllegalArgumentException("Exit threshold must not exceed the target threshold.");
+    }
+    smoothed = new float[numLabels];
+    targetLabels = targetSpec.getLabelIndices();
+    enterThreshold = targetSpec.getThreshold();
+    this.exitThreshold = exitThreshold;
+    this.alpha = alpha;
+  }
+
+  /**
+   * Folds the probabilities of the next frame into the average.
+   *
+   * @param probabilities One probability per label, as filled by {@code
+   *     Classifier.copyProbabilities(float[])}.
+   * @return Whether the target decision changed with this frame.
+   */
+  public boolean update(float[] probabilities) {
+    if (probabilities.length != smoothed.length) {
+      throw new IllegalArgumentException(
+          "Expected " + smoothed.length + " probabilities, got " + probabilities.length);
+    }
+    if (!primed) {
+      // Start from the first frame rather than decaying up from zero.
+      System.arraycopy(probabilities, 0, smoothed, 0, smoothed.length);
+      primed = true;
+    } else {
+      final float keep = 1 - alpha;
+      for (int i = 0; i < smoothed.length; ++i) {
+        smoothed[i] = keep * smoothed[i] + alpha * probabilities[i];
+      }
+    }
+
+    float score = 0;
+    for (final int label : targetLabels) {
+      score += smoothed[label];
+    }
+    targetScore = score;
+    frames++;
+
+    final boolean next = target ? score >= exitThreshold : score > enterThreshold;
+    if (next == target) {
+      return false;
+    }
+    target = next;
+    changes++;
+    return true;
+  }
+
+  /** Returns the current decision; false until the first frame. */
+  public boolean isTarget() {
+    return target;
+  }
+
+  /** Returns the smoothed target score of the last frame. */
+  public float getTargetScore() {
+    return targetScore;
+  }
+
+  /** Returns the smoothed probability of {@code labelIndex}. */
+  public float getProbability(int labelIndex) {
+    return smoothed[labelIndex];
+  }
+
+  /** Returns the label with the highest smoothed probability, or -1 before the first frame. */
+  public int getTopLabel() {
+    if (!primed) {
+      return -1;
+    }
+    int best = 0;
+    for (int i = 1; i < smoothed.length; ++i) {
+      if (smoothed[i] > smoothed[best]) {
+        best = i;
+      }
+    }
+    return best;
+  }
+
+  public long getFrameCount() {
+    return frames;
+  }
+
+  /** Returns how many frames changed the decision. */
+  public long getChangeCount() {
+    return changes;
+  }
+
+  /** Forgets all frames, for example when the camera switches scenes. */
+  public void reset() {
+    Arrays.fill(smoothed, 0);
+    primed = false;
+    target = false;
+    targetScore = 0;
+  }
+}
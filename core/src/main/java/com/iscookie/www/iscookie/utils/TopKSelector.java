@@ -0,0 +1,154 @@
+package com.iscookie.www.iscookie.utils;
+
+/**
+ * Selects the K highest scoring indices from a stream of (index, score) pairs without allocating.
+ *
+ * <p>The selector keeps a fixed-size binary min-heap in two parallel primitive arrays. A score that
+ * can't beat the current K-th best costs a single comparison, which is the common case when
+ * scanning ~1000 labels for the top 3. Call {@link #reset()} before each scan, {@link #offer} for
+ * every candidate and {@link #finish()} once to read the winners in descending order.
+ */
+public final class TopKSelector {
+
+  private final int capacity;
+  private final int[] indices;
+  private final float[] scores;
+  private int size;
+
+  /**
+   * Creates a selector that keeps at most {@code k} results.
+   *
+   * @param k The number of results to keep, must be positive.
+   */
+  public TopKSelector(int k) {
+    if (k <= 0) {
+      throw new IllegalArgumentException("k must be positive: " + k);
+    }
+    capacity = k;
+    indices = new int[k];
+    scores = new float[k];
+  }
+
+  /** Returns the maximum number of results this selector keeps. */
+  public int capacity() {
+    return capacity;
+  }
+
+  /** Discards all results so the selector can be reused for a new scan. */
+  public void reset() {
+    size = 0;
+  }
+
+  /**
+   * Offers a candidate. On equal scores the lower index is kept, so the kept set matches the
+   * ranking of {@link #finish()} whatever the order of the offers.
+   *
+   * @param index The label index of the candidate.
+   * @param score The score of the candidate; higher is better.
+   */
+  public void offer(int index, float score) {
+    if (size < capacity) {
+      indices[size] = index;
+      scores[size] = score;
+      siftUp(size++);
+    } else if (score > scores[0] || (score == scores[0] && index < indices[0])) {
+      indices[0] = index;
+      scores[0] = score;
+      siftDown(0, size);
+    }
+  }
+
+  /**
+   * Offers {@code scores[0..count)} using the array position as the label index.
+   *
+   * @param candidates The scores to scan.
+   * @param count The number of leading entries to scan.
+   */
+  public void offerAll(float[] candidates, int count) {
+    for (int i = 0; i < count; ++i) {
+      offer(i, candidates[i]);
+    }
+  }
+
+  /**
+   * Returns the score a new candidate has to beat to be kept, or match with a lower index than
+   * the weakest kept result. Negative infinity while fewer than K candidates were offered.
+   */
+  public float threshold() {
+    return size < capacity ? Float.NEGATIVE_INFINITY : scores[0];
+  }
+
+  /**
+   * Orders the kept results by descending score, ties broken by ascending index. No further
+   * candidates may be offered until {@link #reset()} is called.
+   *
+   * @return The number of results kept.
+   */
+  public int finish() {
+    // In-place heap sort: repeatedly move the current minimum to the end of the heap.
+    for (int end = size - 1; end > 0; --end) {
+      swap(0, end);
+      siftDown(0, end);
+    }
+    return size;
+  }
+
+  /** Returns the number of results kept. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the label index of the result at {@code rank}, valid after {@link #finish()}. */
+  public int getIndex(int rank) {
+    return indices[rank];
+  }
+
+  /** Returns the score of the result at {@code rank}, valid after {@link #finish()}. */
+  public float getScore(int rank) {
+    return scores[rank];
+  }
+
+  /** Whether the entry at {@code a} ranks below the entry at {@code b}. */
+  private boolean lower(int a, int b) {
+    return scores[a] < scores[b] || (scores[a] == scores[b] && indices[a] > indices[b]);
+  }
+
+  private void siftUp(int child) {
+    while (child > 0) {
+      final int parent = (child - 1) >>> 1;
+      if (!lower(child, parent)) {
+        return;
+      }
+      swap(child, parent);
+      child = parent;
+    }
+  }
+
+  private void siftDown(int parent, int end) {
+    while (true) {
+      int smallest = parent;
+      final int left = 2 * parent + 1;
+      final int right = left + 1;
+      if (left < end && lower(left, smallest)) {
+        smallest = left;
+      }
+      if (right < end && lower(right, smallest)) {
+        smallest = right;
+      }
+      if (smallest == parent) {
+        return;
+      }
+      swap(parent, smallest);
+      parent = smallest;
+    }
+  }
+
+  private void swap(int a, int b) {
+    final int index = indices[a];
+    indices[a] = indices[b];
+    indices[b] = index;
+    final float score = scores[a];
+    scores[a] = scores[b];
+    scores[b] = score;
+  }
+}
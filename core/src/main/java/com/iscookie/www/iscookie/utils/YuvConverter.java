@@ -0,0 +1,123 @@
+package com.iscookie.www.iscookie.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The Java implementation of the YUV 4:2:0 to ARGB conversion used for camera frames.
+ *
+ * <p>{@code ImageUtils} prefers the native library and falls back to this class when it isn't
+ * available. The conversion works in integer arithmetic because some devices have no hardware
+ * floating point.
+ */
+public final class YuvConverter {
+
+  /** 2^18 - 1, the range RGB values are clamped to before being normalized to eight bits. */
+  static final int MAX_CHANNEL_VALUE = 262143;
+
+  private YuvConverter() {}
+
+  /**
+   * Returns the allocated size in bytes of a YUV420SP image of the given dimensions.
+   */
+  public static int getYUVByteSize(final int width, final int height) {
+    // The luminance plane requires 1 byte per pixel.
+    final int ySize = width * height;
+
+    // The UV plane works on 2x2 blocks, so dimensions with odd size must be rounded up.
+    // Each 2x2 block takes 2 bytes to encode, one each for U and V.
+    final int uvSize = ((width + 1) / 2) * ((height + 1) / 2) * 2;
+
+    return ySize + uvSize;
+  }
+
+  /**
+   * Converts YUV 4:2:0 planes, as delivered by {@code android.media.Image}, into ARGB 8888 pixels.
+   *
+   * @param yRowStride The distance between rows of the Y plane, in bytes.
+   * @param uvRowStride The distance between rows of the U and V planes, in bytes.
+   * @param uvPixelStride The distance between neighbouring U or V samples, in bytes.
+   * @param out Receives {@code width * height} pixels.
+   */
+  public static void convertYUV420ToARGB8888(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      int[] out) {
+    int i = 0;
+    for (int y = 0; y < height; y++) {
+      final int pY = yRowStride * y;
+      final int pUV = uvRowStride * (y >> 1);
+
+      for (int x = 0; x < width; x++) {
+        final int uvOffset = pUV + (x >> 1) * uvPixelStride;
+        out[i++] = yuvToRgb(yData[pY + x] & 0xFF, uData[uvOffset] & 0xFF, vData[uvOffset] & 0xFF);
+      }
+    }
+  }
+
+  /**
+   * Converts YUV 4:2:0 planes in place, reading the plane buffers of an {@code
+   * android.media.Image} directly instead of copying them into arrays first. Samples are read with
+   * absolute indexes starting at each buffer's position, which is left unchanged.
+   *
+   * @see #convertYUV420ToARGB8888(byte[], byte[], byte[], int, int, int, int, int, int[])
+   */
+  public static void convertYUV420ToARGB8888(
+      ByteBuffer yData,
+      ByteBuffer uData,
+      ByteBuffer vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      int[] out) {
+    final int yBase = yData.position();
+    final int uBase = uData.position();
+    final int vBase = vData.position();
+    int i = 0;
+    for (int y = 0; y < height; y++) {
+      final int pY = yBase + yRowStride * y;
+      final int pUV = uvRowStride * (y >> 1);
+
+      for (int x = 0; x < width; x++) {
+        final int uvOffset = pUV + (x >> 1) * uvPixelStride;
+        out[i++] =
+            yuvToRgb(
+                yData.get(pY + x) & 0xFF,
+                uData.get(uBase + uvOffset) & 0xFF,
+                vData.get(vBase + uvOffset) & 0xFF);
+      }
+    }
+  }
+
+  /** Converts one pixel from unsigned Y, U and V samples into an opaque ARGB color. */
+  public static int yuvToRgb(int nY, int nU, int nV) {
+    nY -= 16;
+    nU -= 128;
+    nV -= 128;
+    if (nY < 0) nY = 0;
+
+    // This is the floating point equivalent. We do the conversion in integer
+    // because some Android devices do not have floating point in hardware.
+    // nR = (int)(1.164 * nY + 2.018 * nU);
+    // nG = (int)(1.164 * nY - 0.813 * nV - 0.391 * nU);
+    // nB = (int)(1.164 * nY + 1.596 * nV);
+
+    final int foo = 1192 * nY;
+    int nR = foo + 1634 * nV;
+    int nG = foo - 833 * nV - 400 * nU;
+    int nB = foo + 2066 * nU;
+
+    nR = Math.min(MAX_CHANNEL_VALUE, Math.max(0, nR));
+    nG = Math.min(MAX_CHANNEL_VALUE, Math.max(0, nG));
+    nB = Math.min(MAX_CHANNEL_VALUE, Math.max(0, nB));
+
+    return 0xff000000 | ((nR << 6) & 0x00ff0000) | ((nG >> 2) & 0x0000FF00) | ((nB >> 10) & 0xff);
+  }
+}
@@ -0,0 +1,224 @@
+package com.iscookie.www.iscookie.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Turns a YUV 4:2:0 camera frame into a model input tensor without converting the whole frame.
+ *
+ * <p>The multi-step path converts the whole frame to ARGB, draws it rotated and scaled into a
+ * bitmap of the input size, reads the bitmap back and packs it, touching every frame pixel several
+ * times. This packer instead visits each tensor pixel once: it looks up where that pixel samples
+ * the frame in a precomputed index map, reads Y, U and V right there, converts them with {@link
+ * YuvConverter#yuvToRgb} and writes the channels straight into the tensor, normalized through the
+ * {@link PixelPacker}'s tables for float models. No intermediate pixel array is filled. Sampling is nearest neighbour with the geometry of {@code
+ * ImageUtils.getTransformationMatrix}, so the tensor matches that path drawn without bitmap
+ * filtering. The index map is rebuilt only when the frame geometry or the plane strides change.
+ * Not thread safe.
+ */
+public final class YuvTensorPacker {
+
+  private final PixelPacker pixelPacker;
+  private final int width;
+  private final int height;
+
+  /** Frame coordinates sampled by each tensor pixel, row by row. */
+  private final int[] sourceX;
+  private final int[] sourceY;
+
+  /** Offsets into the Y and into the U and V planes, for the strides they were computed with. */
+  private final int[] yIndex;
+  private final int[] uvIndex;
+
+  private int yRowStride = -1;
+  private int uvRowStride = -1;
+  private int uvPixelStride = -1;
+  private boolean configured;
+
+  /**
+   * @param pixelPacker Provides the normalization of the model.
+   * @param width The width of the input tensor.
+   * @param height The height of the input tensor.
+   */
+  public YuvTensorPacker(PixelPacker pixelPacker, int width, int height) {
+    this.pixelPacker = pixelPacker;
+    this.width = width;
+    this.height = height;
+    final int count = width * height;
+    sourceX = new int[count];
+    sourceY = new int[count];
+    yIndex = new int[count];
+    uvIndex = new int[count];
+  }
+
+  /** Allocates a direct buffer holding one packed tensor. */
+  public ByteBuffer allocate() {
+    final ByteBuffer buffer =
+        ByteBuffer.allocateDirect(pixelPacker.getPackedSize(width * height));
+    buffer.order(ByteOrder.nativeOrder());
+    return buffer;
+  }
+
+  /**
+   * Sets the frame geometry and computes which frame pixel each tensor pixel samples.
+   *
+   * @param frameWidth The width of the camera frames.
+   * @param frameHeight The height of the camera frames.
+   * @param rotation The clockwise rotation from frame to tensor, a multiple of 90 degrees.
+   * @param maintainAspectRatio Whether to scale both axes alike and crop what falls outside,
+   *     rather than stretching the frame to the tensor.
+   */
+  public void configure(
+      int frameWidth, int frameHeight, int rotation, boolean maintainAspectRatio) {
+    if (rotation % 90 != 0) {
+      throw new IllegalArgumentException("Rotation must be a multiple of 90: " + rotation);
+    }
+    final int quarterTurns = ((rotation / 90) % 4 + 4) % 4;
+    final boolean transpose = quarterTurns % 2 == 1;
+    final int rotatedWidth = transpose ? frameHeight : frameWidth;
+    final int rotatedHeight = transpose ? frameWidth : frameHeight;
+
+    float scaleX = width / (float) rotatedWidth;
+    float scaleY = height / (float) rotatedHeight;
+    if (maintainAspectRatio) {
+      scaleX = scaleY = Math.max(scaleX, scaleY);
+    }
+    // Like getTransformationMatrix, only rotated frames are centered; others scale from the origin.
+    final boolean centered = quarterTurns != 0;
+
+    int i = 0;
+    for (int row = 0; row < height; ++row) {
+      for (int col = 0; col < width; ++col, ++i) {
+        // Map the tensor pixel center back through scale and rotation.
+        float x = col + 0.5f;
+        float y = row + 0.5f;
+        if (centered) {
+          x -= width / 2f;
+          y -= height / 2f;
+        }
+        x /= scaleX;
+        y /= scaleY;
+        float frameX;
+        float frameY;
+        switch (quarterTurns) {
+          case 1:
+            frameX = y;
+            frameY = -x;
+            break;
+          case 2:
+            frameX = -x;
+            frameY = -y;
+            break;
+          case 3:
+            frameX = -y;
+            frameY = x;
+            break;
+          default:
+            frameX = x;
+            frameY = y;
+            break;
+        }
+        if (centered) {
+          frameX += frameWidth / 2f;
+          frameY += frameHeight / 2f;
+        }
+        sourceX[i] = clamp((int) Math.floor(frameX), frameWidth - 1);
+        sourceY[i] = clamp((int) Math.floor(frameY), frameHeight - 1);
+      }
+    }
+    configured = true;
+    // Force the plane offsets to be recomputed for the new coordinates.
+    yRowStride = -1;
+  }
+
+  private static int clamp(int value, int max) {
+    return Math.max(0, Math.min(max, value));
+  }
+
+  /**
+   * Samples the frame planes and writes the tensor into {@code out} from its start, leaving its
+   * position after the tensor. Plane samples are read with absolute indexes from each buffer's
+   * position, which is left unchanged.
+   *
+   * @param out The input tensor buffer, in native byte order for float models.
+   * @throws IllegalStateException if {@link #configure} wasn't called.
+   */
+  public void pack(
+      ByteBuffer yData,
+      ByteBuffer uData,
+      ByteBuffer vData,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      ByteBuffer out) {
+    if (!configured) {
+      throw new IllegalStateException("Call configure() before packing frames.");
+    }
+    if (yRowStride != this.yRowStride
+        || uvRowStride != this.uvRowStride
+        || uvPixelStride != this.uvPixelStride) {
+      computeIndices(yRowStride, uvRowStride, uvPixelStride);
+    }
+    if (pixelPacker.isQuantized()) {
+      packUint8(yData, uData, vData, out);
+    } else {
+      packFloat(yData, uData, vData, out);
+    }
+    out.position(pixelPacker.getPackedSize(yIndex.length));
+  }
+
+  private void computeIndices(int yRowStride, int uvRowStride, int uvPixelStride) {
+    for (int i = 0; i < yIndex.length; ++i) {
+      yIndex[i] = sourceY[i] * yRowStride + sourceX[i];
+      uvIndex[i] = (sourceY[i] >> 1) * uvRowStride + (sourceX[i] >> 1) * uvPixelStride;
+    }
+    this.yRowStride = yRowStride;
+    this.uvRowStride = uvRowStride;
+    this.uvPixelStride = uvPixelStride;
+  }
+
+  private void packFloat(ByteBuffer yData, ByteBuffer uData, ByteBuffer vData, ByteBuffer out) {
+    final int yBase = yData.position();
+    final int uBase = uData.position();
+    final int vBase = vData.position();
+    final float[] red = pixelPacker.getRedTable();
+    final float[] green = pixelPacker.getGreenTable();
+    final float[] blue = pixelPacker.getBlueTable();
+    for (int i = 0, offset = 0; i < yIndex.length; ++i, offset += 12) {
+      final int uv = uvIndex[i];
+      final int pixel =
+          YuvConverter.yuvToRgb(
+              yData.get(yBase + yIndex[i]) & 0xFF,
+              uData.get(uBase + uv) & 0xFF,
+              vData.get(vBase + uv) & 0xFF);
+      out.putFloat(offset, red[(pixel >> 16) & 0xFF]);
+      out.putFloat(offset + 4, green[(pixel >> 8) & 0xFF]);
+      out.putFloat(offset + 8, blue[pixel & 0xFF]);
+    }
+  }
+
+  private void packUint8(ByteBuffer yData, ByteBuffer uData, ByteBuffer vData, ByteBuffer out) {
+    final int yBase = yData.position();
+    final int uBase = uData.position();
+    final int vBase = vData.position();
+    for (int i = 0, offset = 0; i < yIndex.length; ++i, offset += 3) {
+      final int uv = uvIndex[i];
+      final int pixel =
+          YuvConverter.yuvToRgb(
+              yData.get(yBase + yIndex[i]) & 0xFF,
+              uData.get(uBase + uv) & 0xFF,
+              vData.get(vBase + uv) & 0xFF);
+      out.put(offset, (byte) (pixel >> 16));
+      out.put(offset + 1, (byte) (pixel >> 8));
+      out.put(offset + 2, (byte) pixel);
+    }
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+}
@@ -0,0 +1,108 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DoubleBufferedPipelineTest {
+
+    private static final int FRAMES = 12;
+    private static final long PREPARE_MS = 20;
+    private static final long PROCESS_MS = 30;
+
+    @Test
+    public void overlapsStagesAndKeepsOrder() throws Exception {
+        final List<Integer> results = Collections.synchronizedList(new ArrayList<>());
+        final List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done = new CountDownLatch(FRAMES);
+        final DoubleBufferedPipeline<Integer, int[], Integer> pipeline = new DoubleBufferedPipeline<>(
+                new int[1],
+                new int[1],
+                (input, buffer) -> {
+                    Thread.sleep(PREPARE_MS);
+                    buffer[0] = input * 10;
+                },
+                buffer -> {
+                    Thread.sleep(PROCESS_MS);
+                    return buffer[0] + 1;
+                },
+                new DoubleBufferedPipeline.Listener<Integer, Integer>() {
+                    @Override
+                    public void onResult(Integer input, Integer result) {
+                        results.add(result);
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onError(Integer input, Exception e) {
+                        errors.add(e);
+                        done.countDown();
+                    }
+                },
+                FRAMES);
+
+        final long startTime = System.nanoTime();
+        pipeline.start();
+        for (int i = 0; i < FRAMES; i++) {
+            pipeline.submit(i);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        final long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        pipeline.close();
+
+        assertTrue(errors.isEmpty());
+        for (int i = 0; i < FRAMES; i++) {
+            assertEquals(i * 10 + 1, (int) results.get(i));
+        }
+        // Sequential stages would take FRAMES * (PREPARE_MS + PROCESS_MS) = 600 ms.
+        assertTrue("took " + elapsedMs + " ms", elapsedMs < FRAMES * (PREPARE_MS + PROCESS_MS) * 0.85);
+        assertEquals(FRAMES, pipeline.getProcessedCount());
+        // Processing is the bottleneck, so the prepare stage waits for buffers.
+        assertTrue(pipeline.getPrepareStallMs() > 0);
+        assertTrue(pipeline.getProcessOccupancy() > pipeline.getPrepareOccupancy());
+    }
+
+    @Test
+    public void reportsErrorsAndKeepsRunning() throws Exception {
+        final CountDownLatch done = new CountDownLatch(2);
+        final List<Integer> failed = Collections.synchronizedList(new ArrayList<>());
+        final DoubleBufferedPipeline<Integer, int[], Integer> pipeline = new DoubleBufferedPipeline<>(
+                new int[1],
+                new int[1],
+                (input, buffer) -> {
+                    if (input < 0) {
+                        throw new IllegalArgumentException("negative");
+                    }
+                    buffer[0] = input;
+                },
+                buffer -> buffer[0],
+                new DoubleBufferedPipeline.Listener<Integer, Integer>() {
+                    @Override
+                    public void onResult(Integer input, Integer result) {
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onError(Integer input, Exception e) {
+                        failed.add(input);
+                        done.countDown();
+                    }
+                },
+                2).start();
+
+        assertTrue(pipeline.offer(-1));
+        pipeline.submit(1);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        pipeline.close();
+
+        assertEquals(Collections.singletonList(-1), failed);
+        assertEquals(1, pipeline.getProcessedCount());
+    }
+}
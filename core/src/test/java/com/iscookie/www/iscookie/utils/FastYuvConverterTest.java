@@ -0,0 +1,95 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class FastYuvConverterTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @AfterClass
+    public static void shutDownPool() {
+        POOL.shutdown();
+    }
+
+    @Test
+    public void matchesReferenceForEveryYuvValue() {
+        // Every Y value on both rows, with one U and V for the whole frame.
+        final byte[] y = new byte[256 * 2];
+        for (int x = 0; x < 256; ++x) {
+            y[x] = y[256 + x] = (byte) x;
+        }
+        final byte[] u = new byte[256];
+        final byte[] v = new byte[256];
+        final int[] expected = new int[y.length];
+        final int[] actual = new int[y.length];
+        for (int uValue = 0; uValue < 256; ++uValue) {
+            for (int vValue = 0; vValue < 256; ++vValue) {
+                Arrays.fill(u, (byte) uValue);
+                Arrays.fill(v, (byte) vValue);
+                YuvConverter.convertYUV420ToARGB8888(y, u, v, 256, 2, 256, 256, 2, expected);
+                FastYuvConverter.convertYUV420ToARGB8888(y, u, v, 256, 2, 256, 256, 2, actual);
+                assertArrayEquals("u=" + uValue + " v=" + vValue, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void matchesReferenceForOddSizesAndPaddedStrides() {
+        final int width = 7;
+        final int height = 5;
+        final int rowStride = 12;
+        final Random random = new Random(3);
+        final byte[] y = new byte[rowStride * height];
+        final byte[] u = new byte[rowStride * 3];
+        final byte[] v = new byte[rowStride * 3];
+        random.nextBytes(y);
+        random.nextBytes(u);
+        random.nextBytes(v);
+        final int[] expected = new int[width * height];
+        final int[] actual = new int[width * height];
+
+        YuvConverter.convertYUV420ToARGB8888(y, u, v, width, height, rowStride, rowStride, 2, expected);
+        FastYuvConverter.convertYUV420ToARGB8888(y, u, v, width, height, rowStride, rowStride, 2, actual);
+
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void parallelConversionMatchesReference() {
+        // Large enough to be split into bands, with an odd last row.
+        final int width = 641;
+        final int height = 481;
+        final Random random = new Random(5);
+        final byte[] y = new byte[width * height];
+        final byte[] chroma = new byte[(width + 1) * ((height + 1) / 2)];
+        random.nextBytes(y);
+        random.nextBytes(chroma);
+        final byte[] v = Arrays.copyOfRange(chroma, 1, chroma.length + 1);
+        final int[] expected = new int[width * height];
+        YuvConverter.convertYUV420ToARGB8888(y, chroma, v, width, height, width, width + 1, 2, expected);
+
+        final int[] fromArrays = new int[width * height];
+        FastYuvConverter.convertYUV420ToARGB8888(
+                y, chroma, v, width, height, width, width + 1, 2, fromArrays, POOL);
+        assertArrayEquals(expected, fromArrays);
+
+        final ByteBuffer uBuffer = ByteBuffer.allocateDirect(chroma.length);
+        uBuffer.put(chroma).position(1);
+        final ByteBuffer vBuffer = uBuffer.slice();
+        uBuffer.rewind();
+        final ByteBuffer yBuffer = ByteBuffer.allocateDirect(y.length);
+        yBuffer.put(y).rewind();
+        final int[] fromBuffers = new int[width * height];
+        FastYuvConverter.convertYUV420ToARGB8888(
+                yBuffer, uBuffer, vBuffer, width, height, width, width + 1, 2, fromBuffers, POOL);
+        assertArrayEquals(expected, fromBuffers);
+    }
+}
@@ -0,0 +1,46 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrameRateMeterTest {
+
+    private static final long MS = 1000 * 1000;
+
+    @Test
+    public void measuresFrameRateOverTheLastWindow() {
+        final FrameRateMeter meter = new FrameRateMeter(3);
+        assertEquals(0, meter.getFramesPerSecond(), 0);
+
+        meter.onFrameClassified(0);
+        assertEquals(0, meter.getFramesPerSecond(), 0);
+        meter.onFrameClassified(100 * MS);
+        assertEquals(10, meter.getFramesPerSecond(), 1e-3);
+
+        // Once the window is full, older frames no longer count.
+        meter.onFrameClassified(200 * MS);
+        meter.onFrameClassified(250 * MS);
+        meter.onFrameClassified(300 * MS);
+        assertEquals(20, meter.getFramesPerSecond(), 1e-3);
+        assertEquals(5, meter.getClassifiedCount());
+    }
+
+    @Test
+    public void dropRateIsShareOfArrivedFrames() {
+        final FrameRateMeter meter = new FrameRateMeter();
+        assertEquals(0, meter.getDropRate(), 0);
+        for (int i = 0; i < 4; ++i) {
+            meter.onFrameArrived();
+        }
+        meter.onFrameDropped();
+        assertEquals(0.25f, meter.getDropRate(), 1e-6);
+        assertEquals(1, meter.getDroppedCount());
+        assertEquals(4, meter.getArrivedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWindowOfOneFrame() {
+        new FrameRateMeter(1);
+    }
+}
@@ -0,0 +1,110 @@
+package com.iscookie.www.iscookie.utils;
+
+import com.iscookie.www.iscookie.utils.InferenceAutotuner.Config;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class InferenceAutotunerTest {
+
+    private static final Config REFERENCE = new Config("FLOAT", "CPU", 1);
+    private static final Config FLOAT_4 = new Config("FLOAT", "CPU", 4);
+    private static final Config QUANTIZED_2 = new Config("QUANTIZED", "CPU", 2);
+    private static final Config QUANTIZED_4 = new Config("QUANTIZED", "CPU", 4);
+    private static final Config GPU = new Config("FLOAT", "GPU", 1);
+
+    /** Reports fixed timings and labels per configuration; unknown configurations fail to open. */
+    private static class FakeBackend implements InferenceAutotuner.Backend {
+        private final Map<Config, long[]> timings = new HashMap<>();
+        private final Map<Config, int[]> labels = new HashMap<>();
+
+        FakeBackend with(Config config, int[] topLabels, long... runNanos) {
+            timings.put(config, runNanos);
+            labels.put(config, topLabels);
+            return this;
+        }
+
+        @Override
+        public InferenceAutotuner.Session open(Config config) throws Exception {
+            if (!timings.containsKey(config)) {
+                throw new UnsupportedOperationException(config + " unavailable");
+            }
+            return new InferenceAutotuner.Session() {
+                private int run = 0;
+
+                @Override
+                public long run() {
+                    final long[] runNanos = timings.get(config);
+                    return runNanos[run++ % runNanos.length];
+                }
+
+                @Override
+                public int[] getTopLabels() {
+                    return labels.get(config);
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+
+    @Test
+    public void picksFastestAgreeingConfigurationByMedian() throws Exception {
+        final FakeBackend backend = new FakeBackend()
+                .with(REFERENCE, new int[] {933, 934, 963}, 100)
+                // Fastest median, but its top label isn't among the reference's best three.
+                .with(QUANTIZED_4, new int[] {925, 933, 934}, 10)
+                // One slow outlier doesn't hurt the median.
+                .with(QUANTIZED_2, new int[] {934, 933, 963}, 30, 30, 30, 30, 30, 30, 500)
+                .with(FLOAT_4, new int[] {933, 934, 963}, 40);
+        final InferenceAutotuner tuner = new InferenceAutotuner(backend, REFERENCE, 2, 5, 3);
+
+        final InferenceAutotuner.Result result =
+                tuner.tune(Arrays.asList(REFERENCE, FLOAT_4, QUANTIZED_2, QUANTIZED_4, GPU));
+
+        assertEquals(QUANTIZED_2, result.getBest());
+        assertEquals(5, result.getMeasurements().size());
+        assertEquals(30, result.getMeasurements().get(2).getMedianNanos());
+        assertFalse(result.getMeasurements().get(3).agrees());
+        assertNotNull(result.getMeasurements().get(4).getError());
+    }
+
+    @Test
+    public void prefersFewerThreadsOnTiesAndReferenceWhenNothingAgrees() throws Exception {
+        final FakeBackend tie = new FakeBackend()
+                .with(REFERENCE, new int[] {1}, 50)
+                .with(QUANTIZED_4, new int[] {1}, 20)
+                .with(QUANTIZED_2, new int[] {1}, 20);
+        assertEquals(QUANTIZED_2,
+                new InferenceAutotuner(tie, REFERENCE).tune(Arrays.asList(QUANTIZED_4, QUANTIZED_2)).getBest());
+
+        final FakeBackend disagreeing = new FakeBackend()
+                .with(REFERENCE, new int[] {1}, 50)
+                .with(QUANTIZED_4, new int[] {2}, 20);
+        assertEquals(REFERENCE,
+                new InferenceAutotuner(disagreeing, REFERENCE).tune(Arrays.asList(QUANTIZED_4)).getBest());
+    }
+
+    @Test
+    public void hasNoChoiceWhenReferenceFails() throws Exception {
+        final FakeBackend backend = new FakeBackend().with(QUANTIZED_4, new int[] {1}, 20);
+        assertNull(new InferenceAutotuner(backend, REFERENCE).tune(Arrays.asList(QUANTIZED_4)).getBest());
+    }
+
+    @Test
+    public void parsesItsOwnStringForm() throws Exception {
+        assertEquals(QUANTIZED_4, Config.parse(QUANTIZED_4.toString()));
+        assertNull(Config.parse("QUANTIZED/CPU"));
+        assertNull(Config.parse("QUANTIZED/CPU/many"));
+    }
+}
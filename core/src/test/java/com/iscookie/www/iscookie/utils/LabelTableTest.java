@@ -0,0 +1,62 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class LabelTableTest {
+
+    private static InputStream stream(String text) throws Exception {
+        return new ByteArrayInputStream(text.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void readsOneLabelPerLineLikeReadLine() throws Exception {
+        final LabelTable table = LabelTable.read(stream("background\r\ntench\n\ngreat white shark\n"));
+
+        assertEquals(4, table.size());
+        assertEquals("background", table.getTitle(0));
+        assertEquals("tench", table.getTitle(1));
+        assertEquals("", table.getTitle(2));
+        assertEquals("great white shark", table.getTitle(3));
+        assertEquals("3", table.getId(3));
+        assertSame(table.getTitle(1), table.getTitle(1));
+    }
+
+    @Test
+    public void mapsTitlesBackToTheirFirstIndex() throws Exception {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1001; i++) {
+            text.append("label ").append(i % 1000).append('\n');
+        }
+        final LabelTable table = LabelTable.read(stream(text.toString()));
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, table.indexOf("label " + i));
+        }
+        assertEquals(-1, table.indexOf("label 1000"));
+        assertEquals(-1, table.indexOf("label"));
+        assertEquals(0, table.asList().indexOf("label 0"));
+    }
+
+    @Test
+    public void loadsEachKeyOnce() throws Exception {
+        final AtomicInteger opens = new AtomicInteger();
+        final LabelTable first = LabelTable.getOrLoad("LabelTableTest", () -> {
+            opens.incrementAndGet();
+            return stream("a\nb\n");
+        });
+        final LabelTable second = LabelTable.getOrLoad("LabelTableTest", () -> {
+            opens.incrementAndGet();
+            return stream("c\n");
+        });
+
+        assertSame(first, second);
+        assertEquals(1, opens.get());
+    }
+}
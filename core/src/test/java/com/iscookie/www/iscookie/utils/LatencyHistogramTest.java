@@ -0,0 +1,71 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueWithinAQuarter() {
+        for (long micros = 0; micros < 100000; micros += 7) {
+            final int bucket = LatencyHistogram.getBucket(micros);
+            final long upperBound = LatencyHistogram.getBucketUpperBound(bucket);
+            assertTrue(micros <= upperBound);
+            assertTrue(upperBound <= micros + micros / 4 + 1);
+            if (bucket > 0) {
+                assertTrue(micros > LatencyHistogram.getBucketUpperBound(bucket - 1));
+            }
+        }
+    }
+
+    @Test
+    public void reportsPercentilesAndMax() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; ++i) {
+            histogram.recordMicros(i * 1000);
+        }
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(100000, snapshot.getMaxMicros());
+        assertEquals(50500, snapshot.getMeanMicros());
+        assertInRange(50000, snapshot.getP50Micros());
+        assertInRange(90000, snapshot.getP90Micros());
+        assertInRange(99000, snapshot.getP99Micros());
+        // Percentiles never exceed the largest recorded value.
+        assertEquals(100000, snapshot.getPercentileMicros(100));
+    }
+
+    @Test
+    public void countsConcurrentRecordings() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; ++i) {
+                    histogram.recordNanos(i * 1000L);
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(40000, snapshot.getCount());
+        assertEquals(9999, snapshot.getMaxMicros());
+        assertEquals(4L * 9999 * 10000 / 2, snapshot.getTotalMicros());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.snapshot().getP99Micros());
+    }
+
+    private static void assertInRange(long expected, long actual) {
+        assertTrue(actual + " < " + expected, actual >= expected);
+        assertTrue(actual + " > " + expected + " + 25%", actual <= expected + expected / 4);
+    }
+}
@@ -0,0 +1,56 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ModelSpecTest {
+
+    private static ModelSpec parse(String infoPath, String text) throws Exception {
+        return ModelSpec.parse(infoPath, new ByteArrayInputStream(text.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void readsExplicitManifestKeys() throws Exception {
+        final ModelSpec spec = parse("custom_info.txt",
+                "Model: custom\nFile: net.tflite\nLabels: food.txt\nSize: 192x128\nType: float32\n"
+                        + "Mean: 124, 117, 104\nStd: 58\n");
+
+        assertEquals("custom", spec.getName());
+        assertEquals("net.tflite", spec.getModelPath());
+        assertEquals("food.txt", spec.getLabelPath());
+        assertEquals(192, spec.getInputWidth());
+        assertEquals(128, spec.getInputHeight());
+        assertFalse(spec.isQuantized());
+        assertArrayEquals(new float[] {124, 117, 104}, spec.getMean(), 0f);
+        assertArrayEquals(new float[] {58, 58, 58}, spec.getStd(), 0f);
+    }
+
+    @Test
+    public void infersSizeAndTypeFromMobileNetNames() throws Exception {
+        final ModelSpec quantized = parse("mobilenet_v1_0.5_160_quant_info.txt",
+                "Input: input\nOutput: MobilenetV1/Predictions/Reshape_1\n");
+        assertEquals("mobilenet_v1_0.5_160_quant", quantized.getName());
+        assertEquals("mobilenet_v1_0.5_160_quant.tflite", quantized.getModelPath());
+        assertEquals("labels.txt", quantized.getLabelPath());
+        assertEquals(160, quantized.getInputWidth());
+        assertTrue(quantized.isQuantized());
+        assertEquals(1, quantized.getDataType().getBytesPerChannel());
+
+        final ModelSpec floating = parse("x_info.txt", "Model: mobilenet_v1_1.0_128\n");
+        assertEquals(128, floating.getInputHeight());
+        assertEquals(ModelSpec.DataType.FLOAT32, floating.getDataType());
+        assertArrayEquals(new float[] {127.5f, 127.5f, 127.5f}, floating.getMean(), 0f);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsManifestsWithoutInputSize() throws Exception {
+        parse("inception_info.txt", "Model: inception\nType: float32\n");
+    }
+}
@@ -0,0 +1,51 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+
+public class PixelPackerTest {
+
+    private static final int[] PIXELS = {0xff000000, 0xffffffff, 0xff102030, 0x80ff7f01};
+
+    @Test
+    public void packsFloatChannelsNormalizedToMinusOneToOne() throws Exception {
+        final PixelPacker packer = PixelPacker.forFloat(
+                new float[]{127.5f, 127.5f, 127.5f}, new float[]{127.5f, 127.5f, 127.5f});
+        final ByteBuffer out = ByteBuffer.allocateDirect(packer.getPackedSize(PIXELS.length * 2));
+        out.order(ByteOrder.nativeOrder());
+
+        // Pack twice so the second call goes through the cached float view at an offset.
+        packer.pack(PIXELS, PIXELS.length, out);
+        packer.pack(PIXELS, PIXELS.length, out);
+        assertEquals(out.capacity(), out.position());
+
+        out.rewind();
+        for (int round = 0; round < 2; round++) {
+            for (final int pixel : PIXELS) {
+                assertEquals((((pixel >> 16) & 0xff) - 127.5f) / 127.5f, out.getFloat(), 1e-6f);
+                assertEquals((((pixel >> 8) & 0xff) - 127.5f) / 127.5f, out.getFloat(), 1e-6f);
+                assertEquals(((pixel & 0xff) - 127.5f) / 127.5f, out.getFloat(), 1e-6f);
+            }
+        }
+    }
+
+    @Test
+    public void packsRawChannelBytesForQuantizedModels() throws Exception {
+        final PixelPacker packer = PixelPacker.forUint8();
+        final ByteBuffer out = ByteBuffer.allocateDirect(packer.getPackedSize(PIXELS.length));
+
+        packer.pack(PIXELS, PIXELS.length, out);
+        assertEquals(out.capacity(), out.position());
+
+        out.rewind();
+        for (final int pixel : PIXELS) {
+            assertEquals((pixel >> 16) & 0xff, out.get() & 0xff);
+            assertEquals((pixel >> 8) & 0xff, out.get() & 0xff);
+            assertEquals(pixel & 0xff, out.get() & 0xff);
+        }
+    }
+}
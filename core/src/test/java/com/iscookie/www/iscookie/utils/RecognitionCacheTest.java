@@ -0,0 +1,65 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RecognitionCacheTest {
+
+    private static final int[] LABELS = {3, 1, 2};
+    private static final float[] CONFIDENCES = {0.6f, 0.3f, 0.1f};
+
+    @Test
+    public void hitsWithinHammingDistanceAndExpiresAfterTtl() throws Exception {
+        final RecognitionCache cache = new RecognitionCache(4, 3, 2, 1000);
+        cache.put(0b1111L, 0, 3, LABELS, CONFIDENCES, 1);
+
+        final int slot = cache.lookup(0b0111L, 500);
+        assertTrue(slot >= 0);
+        assertEquals(3, cache.getResultCount(slot));
+        assertEquals(1, cache.getConfidentCount(slot));
+        assertEquals(3, cache.getLabelIndex(slot, 0));
+        assertEquals(0.6f, cache.getConfidence(slot, 0), 0f);
+
+        assertEquals(-1, cache.lookup(0b11110000L, 500));
+        assertEquals(-1, cache.lookup(0b1111L, 1001));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntryWhenFull() throws Exception {
+        final RecognitionCache cache = new RecognitionCache(2, 3, 0, 10000);
+        cache.put(1L, 0, 3, LABELS, CONFIDENCES, 0);
+        cache.put(2L, 1, 3, LABELS, CONFIDENCES, 0);
+        cache.lookup(1L, 2);
+        cache.put(4L, 3, 3, LABELS, CONFIDENCES, 0);
+
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(cache.lookup(1L, 4) >= 0);
+        assertEquals(-1, cache.lookup(2L, 4));
+        assertTrue(cache.lookup(4L, 4) >= 0);
+    }
+
+    @Test
+    public void hashesNearDuplicateFramesCloserThanDifferentFrames() throws Exception {
+        final int size = 224;
+        final int[] gradient = new int[size * size];
+        final int[] noisyGradient = new int[size * size];
+        final int[] flipped = new int[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                final int value = (x * 255 / size + y) & 0xff;
+                gradient[y * size + x] = 0xff000000 | value * 0x010101;
+                final int noisy = Math.min(255, value + ((x * 31 + y * 17) % 3));
+                noisyGradient[y * size + x] = 0xff000000 | noisy * 0x010101;
+                flipped[y * size + (size - 1 - x)] = gradient[y * size + x];
+            }
+        }
+        final FrameHasher hasher = new FrameHasher();
+        final long hash = hasher.hash(gradient, size, size);
+        assertTrue(FrameHasher.distance(hash, hasher.hash(noisyGradient, size, size)) <= 5);
+        assertTrue(FrameHasher.distance(hash, hasher.hash(flipped, size, size)) > 5);
+    }
+}
@@ -0,0 +1,37 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TargetSpecTest {
+
+    private static final LabelTable LABELS =
+            LabelTable.of(Arrays.asList("background", "bagel", "pretzel", "plate"));
+
+    @Test
+    public void compilesTitlesAndIndicesIntoSortedIndices() throws Exception {
+        final List<String> targets = TargetSpec.readTitles(new ByteArrayInputStream(
+                "# comment\npretzel\n\n  1 \n".getBytes("UTF-8")));
+        final TargetSpec spec = TargetSpec.compile(LABELS, targets, 0.3f);
+
+        assertEquals(Arrays.asList("pretzel", "1"), targets);
+        assertArrayEquals(new int[] {1, 2}, spec.getLabelIndices());
+        assertTrue(spec.contains(2));
+        assertFalse(spec.contains(3));
+        assertEquals(0.3f, spec.getThreshold(), 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownLabels() throws Exception {
+        TargetSpec.compile(LABELS, Collections.singletonList("cookie"), 0.3f);
+    }
+}
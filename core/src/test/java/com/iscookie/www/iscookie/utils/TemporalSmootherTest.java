@@ -0,0 +1,52 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TemporalSmootherTest {
+
+    private static final LabelTable LABELS = LabelTable.of(Arrays.asList("plate", "bagel", "pretzel"));
+
+    private static float[] frame(float plate, float bagel, float pretzel) {
+        return new float[] {plate, bagel, pretzel};
+    }
+
+    @Test
+    public void switchesWithHysteresisAndReportsOnlyChanges() throws Exception {
+        final TargetSpec spec = TargetSpec.compile(LABELS, Arrays.asList("bagel", "pretzel"), 0.5f);
+        final TemporalSmoother smoother = new TemporalSmoother(3, spec, 0.3f, 1f);
+
+        assertFalse(smoother.update(frame(0.8f, 0.1f, 0.1f)));
+        assertTrue(smoother.update(frame(0.4f, 0.3f, 0.3f)));
+        assertTrue(smoother.isTarget());
+        // Between the exit and the target threshold the decision holds.
+        assertFalse(smoother.update(frame(0.6f, 0.2f, 0.2f)));
+        assertTrue(smoother.isTarget());
+        assertTrue(smoother.update(frame(0.8f, 0.1f, 0.1f)));
+        assertFalse(smoother.isTarget());
+        assertEquals(2, smoother.getChangeCount());
+        assertEquals(4, smoother.getFrameCount());
+    }
+
+    @Test
+    public void singleOutlierFrameDoesNotFlipSmoothedDecision() throws Exception {
+        final TargetSpec spec = TargetSpec.compile(LABELS, Collections.singletonList("bagel"), 0.5f);
+        final TemporalSmoother smoother = new TemporalSmoother(3, spec, 0.4f, 0.3f);
+
+        smoother.update(frame(0.9f, 0.1f, 0f));
+        assertFalse(smoother.update(frame(0.1f, 0.9f, 0f)));
+        assertEquals(0.34f, smoother.getTargetScore(), 1e-6f);
+        assertEquals(0, smoother.getTopLabel());
+
+        smoother.reset();
+        assertEquals(-1, smoother.getTopLabel());
+        smoother.update(frame(0.1f, 0.9f, 0f));
+        assertTrue(smoother.isTarget());
+    }
+}
@@ -0,0 +1,64 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.junit.Test;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link TopKSelector} against the PriorityQueue selection it replaced in
+ * {@code Classifier.recognizeImage}.
+ */
+public class TopKSelectorTest {
+
+    private static final int NUM_LABELS = 1001;
+
+    @Test
+    public void matchesPriorityQueueOnRandomScores() throws Exception {
+        final Random random = new Random(42);
+        final float[] scores = new float[NUM_LABELS];
+        final TopKSelector selector = new TopKSelector(3);
+        for (int trial = 0; trial < 100; trial++) {
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = random.nextFloat();
+            }
+            selector.reset();
+            selector.offerAll(scores, scores.length);
+            assertEquals(3, selector.finish());
+
+            final PriorityQueue<Integer> pq =
+                    new PriorityQueue<Integer>(3, (lhs, rhs) -> Float.compare(scores[rhs], scores[lhs]));
+            for (int i = 0; i < scores.length; i++) {
+                pq.add(i);
+            }
+            for (int rank = 0; rank < 3; rank++) {
+                final int expected = pq.poll();
+                assertEquals(expected, selector.getIndex(rank));
+                assertEquals(scores[expected], selector.getScore(rank), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void keepsFewerResultsThanCapacity() throws Exception {
+        final TopKSelector selector = new TopKSelector(3);
+        selector.offer(7, 0.25f);
+        selector.offer(2, 0.75f);
+        assertEquals(2, selector.finish());
+        assertEquals(2, selector.getIndex(0));
+        assertEquals(7, selector.getIndex(1));
+    }
+
+    @Test
+    public void breaksTiesByLowerIndex() throws Exception {
+        final TopKSelector selector = new TopKSelector(2);
+        selector.offer(5, 0.5f);
+        selector.offer(1, 0.5f);
+        selector.offer(3, 0.5f);
+        assertEquals(2, selector.finish());
+        assertEquals(1, selector.getIndex(0));
+        assertEquals(3, selector.getIndex(1));
+    }
+}
@@ -0,0 +1,86 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class YuvConverterTest {
+
+    @Test
+    public void roundsOddDimensionsUpForChroma() {
+        assertEquals(4 * 2 + 2 * 1 * 2, YuvConverter.getYUVByteSize(4, 2));
+        assertEquals(3 * 3 + 2 * 2 * 2, YuvConverter.getYUVByteSize(3, 3));
+    }
+
+    @Test
+    public void convertsGraysAndClampsExtremes() {
+        assertEquals(0xff000000, YuvConverter.yuvToRgb(16, 128, 128));
+        assertEquals(0xffffffff, YuvConverter.yuvToRgb(255, 128, 128));
+        assertEquals(0xff000000, YuvConverter.yuvToRgb(0, 128, 128));
+    }
+
+    @Test
+    public void sharesChromaBetweenTwoByTwoBlocks() {
+        final byte[] y = {16, (byte) 255, 16, (byte) 255, (byte) 255, 16, (byte) 255, 16};
+        // Row stride 4, pixel stride 2: one sample per 2x2 block, padding in between.
+        final byte[] u = {(byte) 128, 0, (byte) 240, 0};
+        final byte[] v = {(byte) 128, 0, 16, 0};
+        final int[] out = new int[8];
+
+        YuvConverter.convertYUV420ToARGB8888(y, u, v, 4, 2, 4, 4, 2, out);
+
+        for (int row = 0; row < 2; ++row) {
+            for (int col = 0; col < 4; ++col) {
+                final int uv = (col >> 1) * 2;
+                assertEquals(
+                        YuvConverter.yuvToRgb(y[row * 4 + col] & 0xFF, u[uv] & 0xFF, v[uv] & 0xFF),
+                        out[row * 4 + col]);
+            }
+        }
+        assertEquals(0xff000000, out[0]);
+        assertEquals(0xffffffff, out[1]);
+    }
+
+    @Test
+    public void directBuffersConvertLikeArrays() {
+        final int width = 6;
+        final int height = 5;
+        // Padded rows and interleaved chroma, like Camera2 planes.
+        final int yRowStride = 8;
+        final int uvRowStride = 8;
+        final Random random = new Random(7);
+        final byte[] y = new byte[yRowStride * height];
+        final byte[] u = new byte[uvRowStride * 3];
+        final byte[] v = new byte[uvRowStride * 3];
+        random.nextBytes(y);
+        random.nextBytes(u);
+        random.nextBytes(v);
+        final int[] expected = new int[width * height];
+        YuvConverter.convertYUV420ToARGB8888(y, u, v, width, height, yRowStride, uvRowStride, 2, expected);
+
+        final int[] actual = new int[width * height];
+        final ByteBuffer uBuffer = direct(u);
+        // Reading starts at the position, which must stay where it was.
+        final ByteBuffer vBuffer = ByteBuffer.allocateDirect(v.length + 3);
+        vBuffer.position(3);
+        vBuffer.put(v);
+        vBuffer.position(3);
+        YuvConverter.convertYUV420ToARGB8888(
+                direct(y), uBuffer, vBuffer, width, height, yRowStride, uvRowStride, 2, actual);
+
+        assertArrayEquals(expected, actual);
+        assertEquals(3, vBuffer.position());
+        assertEquals(0, uBuffer.position());
+    }
+
+    private static ByteBuffer direct(byte[] bytes) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.rewind();
+        return buffer;
+    }
+}
@@ -0,0 +1,149 @@
+package com.iscookie.www.iscookie.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Checks the fused packer against the multi-step path: convert the whole frame, rotate and scale
+ * it, then pack the pixels.
+ */
+public class YuvTensorPackerTest {
+
+    private static final float[] MEANS = {127.5f, 127.5f, 127.5f};
+    private static final float[] STDS = {127.5f, 127.5f, 127.5f};
+
+    /** A frame with padded rows and interleaved chroma, like Camera2 delivers. */
+    private static final class Frame {
+        final int width;
+        final int height;
+        final int rowStride;
+        final ByteBuffer y;
+        final ByteBuffer u;
+        final ByteBuffer v;
+
+        Frame(int width, int height, int seed) {
+            this.width = width;
+            this.height = height;
+            rowStride = width + 4;
+            final Random random = new Random(seed);
+            final byte[] luma = new byte[rowStride * height];
+            final byte[] chroma = new byte[rowStride * ((height + 1) / 2)];
+            random.nextBytes(luma);
+            random.nextBytes(chroma);
+            y = ByteBuffer.wrap(luma);
+            u = ByteBuffer.wrap(chroma);
+            // V is interleaved one byte after U.
+            u.position(1);
+            v = u.slice();
+            u.rewind();
+        }
+
+        int[] toArgb() {
+            final int[] argb = new int[width * height];
+            YuvConverter.convertYUV420ToARGB8888(y, u, v, width, height, rowStride, rowStride, 2, argb);
+            return argb;
+        }
+
+        void pack(YuvTensorPacker packer, ByteBuffer out) {
+            packer.pack(y, u, v, rowStride, rowStride, 2, out);
+        }
+    }
+
+    private static float[] packFloat(PixelPacker pixelPacker, int[] pixels) {
+        final ByteBuffer buffer = ByteBuffer.allocate(pixelPacker.getPackedSize(pixels.length))
+                .order(ByteOrder.nativeOrder());
+        pixelPacker.pack(pixels, pixels.length, buffer);
+        return floats(buffer);
+    }
+
+    private static float[] floats(ByteBuffer buffer) {
+        buffer.rewind();
+        final float[] values = new float[buffer.remaining() / 4];
+        buffer.asFloatBuffer().get(values);
+        return values;
+    }
+
+    @Test
+    public void downscaledFloatTensorMatchesConvertThenScaleThenPack() {
+        final Frame frame = new Frame(8, 6, 1);
+        final PixelPacker pixelPacker = PixelPacker.forFloat(MEANS, STDS);
+        final YuvTensorPacker packer = new YuvTensorPacker(pixelPacker, 4, 3);
+        packer.configure(8, 6, 0, true);
+        final ByteBuffer out = packer.allocate();
+        frame.pack(packer, out);
+
+        // Halving samples the lower right pixel of each 2x2 block, whose center maps closest.
+        final int[] argb = frame.toArgb();
+        final int[] scaled = new int[4 * 3];
+        for (int row = 0; row < 3; ++row) {
+            for (int col = 0; col < 4; ++col) {
+                scaled[row * 4 + col] = argb[(2 * row + 1) * 8 + 2 * col + 1];
+            }
+        }
+        assertArrayEquals(packFloat(pixelPacker, scaled), floats(out), 0f);
+    }
+
+    @Test
+    public void rotatedQuantizedTensorMatchesConvertThenRotateThenPack() {
+        final Frame frame = new Frame(6, 4, 2);
+        final PixelPacker pixelPacker = PixelPacker.forUint8();
+        final YuvTensorPacker packer = new YuvTensorPacker(pixelPacker, 4, 6);
+        packer.configure(6, 4, 90, true);
+        final ByteBuffer out = packer.allocate();
+        frame.pack(packer, out);
+
+        // A clockwise quarter turn puts the bottom left of the frame at the top left.
+        final int[] argb = frame.toArgb();
+        final int[] rotated = new int[4 * 6];
+        for (int row = 0; row < 6; ++row) {
+            for (int col = 0; col < 4; ++col) {
+                rotated[row * 4 + col] = argb[(3 - col) * 6 + row];
+            }
+        }
+        final ByteBuffer expected = ByteBuffer.allocate(pixelPacker.getPackedSize(rotated.length));
+        pixelPacker.pack(rotated, rotated.length, expected);
+        assertArrayEquals(expected.array(), copy(out));
+    }
+
+    @Test
+    public void recomputesOffsetsWhenStridesChange() {
+        final PixelPacker pixelPacker = PixelPacker.forUint8();
+        final YuvTensorPacker packer = new YuvTensorPacker(pixelPacker, 2, 2);
+        packer.configure(2, 2, 180, false);
+        final ByteBuffer out = packer.allocate();
+
+        final Frame narrow = new Frame(2, 2, 3);
+        narrow.pack(packer, out);
+        final byte[] first = copy(out);
+
+        // Same pixels, but rows padded to 16 bytes.
+        final byte[] luma = new byte[32];
+        final byte[] chroma = new byte[16];
+        for (int row = 0; row < 2; ++row) {
+            for (int col = 0; col < 2; ++col) {
+                luma[row * 16 + col] = narrow.y.get(row * narrow.rowStride + col);
+            }
+        }
+        chroma[0] = narrow.u.get(0);
+        chroma[1] = narrow.v.get(0);
+        final ByteBuffer u = ByteBuffer.wrap(chroma);
+        u.position(1);
+        final ByteBuffer v = u.slice();
+        u.rewind();
+        packer.pack(ByteBuffer.wrap(luma), u, v, 16, 16, 2, out);
+
+        assertArrayEquals(first, copy(out));
+    }
+
+    private static byte[] copy(ByteBuffer buffer) {
+        buffer.rewind();
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,132 @@
+package com.iscookie.www.iscookie.tools;
+
+import java.util.Locale;
+
+/**
+ * Tallies classification outcomes at several confidence thresholds at once.
+ *
+ * <p>For the top-1 label a threshold works like the classifier's confidence threshold: answers
+ * below it are withheld. Coverage is the share of images answered, precision the share of answers
+ * that were right and accuracy the share of all images answered right. For the target question a
+ * threshold is compared with the aggregated target score, as {@code TargetSpec} does, and yields
+ * precision and recall. Not thread safe.
+ */
+public final class AccuracyReport {
+
+  private final float[] thresholds;
+  private final long[] answered;
+  private final long[] answeredRight;
+  private final long[] targetPredicted;
+  private final long[] targetPredictedRight;
+  private long total;
+  private long targets;
+
+  /** @param thresholds The thresholds to report, in the order they are printed. */
+  public AccuracyReport(float[] thresholds) {
+    this.thresholds = thresholds.clone();
+    answered = new long[thresholds.length];
+    answeredRight = new long[thresholds.length];
+    targetPredicted = new long[thresholds.length];
+    targetPredictedRight = new long[thresholds.length];
+  }
+
+  /**
+   * Adds the outcome of one image.
+   *
+   * @param expectedLabel The true label, or -1 if the image has none in the model's label set.
+   * @param topLabel The label with the highest probability.
+   * @param topConfidence The probability of {@code topLabel}.
+   * @param isTarget Whether the image truly shows the target.
+   * @param targetScore The aggregated probability of the target labels.
+   */
+  public void add(
+      int expectedLabel, int topLabel, float topConfidence, boolean isTarget, float targetScore) {
+    total++;
+    if (isTarget) {
+      targets++;
+    }
+    for (int i = 0; i < thresholds.length; ++i) {
+      if (topConfidence >= thresholds[i]) {
+        answered[i]++;
+        if (topLabel == expectedLabel) {
+          answeredRight[i]++;
+        }
+      }
+      if (targetScore > thresholds[i]) {
+        targetPredicted[i]++;
+        if (isTarget) {
+          targetPredictedRight[i]++;
+        }
+      }
+    }
+  }
+
+  public long getTotal() {
+    return total;
+  }
+
+  public int getThresholdCount() {
+    return thresholds.length;
+  }
+
+  public float getThreshold(int index) {
+    return thresholds[index];
+  }
+
+  /** Returns the share of images whose top-1 confidence reached the threshold. */
+  public float getCoverage(int index) {
+    return ratio(answered[index], total);
+  }
+
+  /** Returns the share of answered images whose top-1 label was right. */
+  public float getPrecision(int index) {
+    return ratio(answeredRight[index], answered[index]);
+  }
+
+  /** Returns the share of all images that were answered with the right label. */
+  public float getAccuracy(int index) {
+    return ratio(answeredRight[index], total);
+  }
+
+  /** Returns the share of images called target that show it. */
+  public float getTargetPrecision(int index) {
+    return ratio(targetPredictedRight[index], targetPredicted[index]);
+  }
+
+  /** Returns the share of target images called target. */
+  public float getTargetRecall(int index) {
+    return ratio(targetPredictedRight[index], targets);
+  }
+
+  private static float ratio(long part, long whole) {
+    return whole == 0 ? 0 : (float) part / whole;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder();
+    builder.append(
+        String.format(
+            Locale.US,
+            "%9s %8s %9s %8s %11s %10s%n",
+            "threshold",
+            "coverage",
+            "precision",
+            "accuracy",
+            "target prec",
+            "target rec"));
+    for (int i = 0; i < thresholds.length; ++i) {
+      builder.append(
+          String.format(
+              Locale.US,
+              "%9.2f %7.1f%% %8.1f%% %7.1f%% %10.1f%% %9.1f%%%n",
+              thresholds[i],
+              getCoverage(i) * 100,
+              getPrecision(i) * 100,
+              getAccuracy(i) * 100,
+              getTargetPrecision(i) * 100,
+              getTargetRecall(i) * 100));
+    }
+    return builder.toString();
+  }
+}
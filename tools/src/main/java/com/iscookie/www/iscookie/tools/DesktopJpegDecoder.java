@@ -0,0 +1,293 @@
+package com.iscookie.www.iscookie.tools;
+
+import com.iscookie.www.iscookie.utils.ClassificationMetrics;
+import com.iscookie.www.iscookie.utils.ClassificationMetrics.Stage;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Decodes images to model input size the way the app's {@code JpegDecoder} does, with Image I/O
+ * and Java2D instead of {@code BitmapFactory} and {@code Canvas}.
+ *
+ * <p>The same steps run in the same order: the largest power-of-two sample size that keeps the
+ * picture at least as large as the target, decoding the subsampled picture at RGB 565 precision,
+ * and one bilinear draw that applies the EXIF orientation and scales to the target size without
+ * keeping the aspect ratio. Two differences remain, both small next to the scaling itself:
+ *
+ * <ul>
+ *   <li>libjpeg subsamples in the DCT, averaging each block, while Image I/O keeps every n-th
+ *       pixel.
+ *   <li>Skia's and Java2D's bilinear filters round differently at the edges.
+ * </ul>
+ *
+ * <p>Not thread safe.
+ */
+final class DesktopJpegDecoder {
+
+  // EXIF orientations, numbered like ExifInterface.ORIENTATION_*.
+  static final int ORIENTATION_NORMAL = 1;
+  static final int ORIENTATION_FLIP_HORIZONTAL = 2;
+  static final int ORIENTATION_ROTATE_180 = 3;
+  static final int ORIENTATION_FLIP_VERTICAL = 4;
+  static final int ORIENTATION_TRANSPOSE = 5;
+  static final int ORIENTATION_ROTATE_90 = 6;
+  static final int ORIENTATION_TRANSVERSE = 7;
+  static final int ORIENTATION_ROTATE_270 = 8;
+
+  private static final int TAG_ORIENTATION = 0x0112;
+
+  private final BufferedImage target;
+  private final ClassificationMetrics metrics;
+
+  private int lastSampleSize;
+
+  /** @param metrics Receives the decode and scale latencies. */
+  DesktopJpegDecoder(int targetWidth, int targetHeight, ClassificationMetrics metrics) {
+    this.target = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+    this.metrics = metrics;
+  }
+
+  /**
+   * Decodes {@code file}, upright, into an image of the target size. The image is reused by the
+   * next call.
+   *
+   * @throws IOException if {@code file} can't be decoded.
+   */
+  BufferedImage decode(File file) throws IOException {
+    final long decodeStart = System.nanoTime();
+    final byte[] bytes = Files.readAllBytes(file.toPath());
+    final int orientation = readOrientation(bytes);
+    final boolean transposed = isTransposed(orientation);
+    final BufferedImage decoded;
+    final int sampleSize;
+    try (ImageInputStream stream =
+        ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+      final Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+      if (!readers.hasNext()) {
+        throw new IOException("Not a readable image: " + file);
+      }
+      final ImageReader reader = readers.next();
+      try {
+        reader.setInput(stream, true, true);
+        // The target is upright, the encoded picture may be stored sideways.
+        sampleSize =
+            computeSampleSize(
+                reader.getWidth(0),
+                reader.getHeight(0),
+                transposed ? target.getHeight() : target.getWidth(),
+                transposed ? target.getWidth() : target.getHeight());
+        final ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(sampleSize, sampleSize, 0, 0);
+        decoded = reader.read(0, param);
+      } finally {
+        reader.dispose();
+      }
+    }
+    quantizeToRgb565(decoded);
+    final long scaleStart = System.nanoTime();
+    metrics.record(Stage.DECODE, scaleStart - decodeStart);
+
+    final Graphics2D graphics = target.createGraphics();
+    graphics.setRenderingHint(
+        RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    // The transform covers the whole target, so the previous image is overdrawn.
+    graphics.drawImage(
+        decoded,
+        getTransform(
+            orientation,
+            decoded.getWidth(),
+            decoded.getHeight(),
+            target.getWidth(),
+            target.getHeight()),
+        null);
+    graphics.dispose();
+    metrics.record(Stage.SCALE, System.nanoTime() - scaleStart);
+    lastSampleSize = sampleSize;
+    return target;
+  }
+
+  /** Returns the sample size of the last decode. */
+  int getLastSampleSize() {
+    return lastSampleSize;
+  }
+
+  /** The same as {@code JpegDecoder.computeSampleSize} in the app. */
+  static int computeSampleSize(int width, int height, int targetWidth, int targetHeight) {
+    int sampleSize = 1;
+    while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+
+  /** Drops the low bits like a {@code Bitmap.Config.RGB_565} decode and expands them like Skia. */
+  private static void quantizeToRgb565(BufferedImage image) {
+    final int width = image.getWidth();
+    final int[] row = new int[width];
+    for (int y = 0; y < image.getHeight(); ++y) {
+      image.getRGB(0, y, width, 1, row, 0, width);
+      for (int x = 0; x < width; ++x) {
+        final int red = (row[x] >> 19) & 0x1f;
+        final int green = (row[x] >> 10) & 0x3f;
+        final int blue = (row[x] >> 3) & 0x1f;
+        row[x] =
+            0xff000000
+                | ((red << 3) | (red >> 2)) << 16
+                | ((green << 2) | (green >> 4)) << 8
+                | ((blue << 3) | (blue >> 2));
+      }
+      image.setRGB(0, y, width, 1, row, 0, width);
+    }
+  }
+
+  /**
+   * Returns the EXIF orientation of {@code jpeg}, or normal if it has none. Only the first IFD of
+   * an APP1 segment before the image data is read, which is where cameras put it.
+   */
+  static int readOrientation(byte[] jpeg) {
+    if (jpeg.length < 4 || (jpeg[0] & 0xff) != 0xff || (jpeg[1] & 0xff) != 0xd8) {
+      return ORIENTATION_NORMAL;
+    }
+    int offset = 2;
+    while (offset + 4 <= jpeg.length && (jpeg[offset] & 0xff) == 0xff) {
+      final int marker = jpeg[offset + 1] & 0xff;
+      if (marker == 0xda || marker == 0xd9) {
+        // Start of scan or end of image, no metadata follows.
+        break;
+      }
+      final int length = readUnsignedShort(jpeg, offset + 2, false);
+      final int end = Math.min(jpeg.length, offset + 2 + length);
+      if (marker == 0xe1 && isExifHeader(jpeg, offset + 4, end)) {
+        return readTiffOrientation(jpeg, offset + 10, end);
+      }
+      offset += 2 + length;
+    }
+    return ORIENTATION_NORMAL;
+  }
+
+  private static boolean isExifHeader(byte[] data, int start, int end) {
+    final byte[] header = {'E', 'x', 'i', 'f', 0, 0};
+    if (start + header.length > end) {
+      return false;
+    }
+    for (int i = 0; i < header.length; ++i) {
+      if (data[start + i] != header[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int readTiffOrientation(byte[] data, int start, int end) {
+    if (start + 8 > end) {
+      return ORIENTATION_NORMAL;
+    }
+    final boolean littleEndian;
+    if (data[start] == 'I' && data[start + 1] == 'I') {
+      littleEndian = true;
+    } else if (data[start] == 'M' && data[start + 1] == 'M') {
+      littleEndian = false;
+    } else {
+      return ORIENTATION_NORMAL;
+    }
+    final long ifdOffset = readUnsignedInt(data, start + 4, littleEndian);
+    if (ifdOffset < 8 || start + ifdOffset + 2 > end) {
+      return ORIENTATION_NORMAL;
+    }
+    final int ifd = start + (int) ifdOffset;
+    final int count = readUnsignedShort(data, ifd, littleEndian);
+    for (int i = 0; i < count; ++i) {
+      final int entry = ifd + 2 + 12 * i;
+      if (entry + 12 > end) {
+        break;
+      }
+      if (readUnsignedShort(data, entry, littleEndian) == TAG_ORIENTATION) {
+        // A single SHORT is stored in the first two bytes of the value field.
+        final int orientation = readUnsignedShort(data, entry + 8, littleEndian);
+        return orientation >= ORIENTATION_NORMAL && orientation <= ORIENTATION_ROTATE_270
+            ? orientation
+            : ORIENTATION_NORMAL;
+      }
+    }
+    return ORIENTATION_NORMAL;
+  }
+
+  private static int readUnsignedShort(byte[] data, int offset, boolean littleEndian) {
+    final int first = data[offset] & 0xff;
+    final int second = data[offset + 1] & 0xff;
+    return littleEndian ? second << 8 | first : first << 8 | second;
+  }
+
+  private static long readUnsignedInt(byte[] data, int offset, boolean littleEndian) {
+    final long first = readUnsignedShort(data, offset, littleEndian);
+    final long second = readUnsignedShort(data, offset + 2, littleEndian);
+    return littleEndian ? second << 16 | first : first << 16 | second;
+  }
+
+  /** Whether the picture is stored with width and height swapped. */
+  private static boolean isTransposed(int orientation) {
+    return orientation == ORIENTATION_TRANSPOSE
+        || orientation == ORIENTATION_ROTATE_90
+        || orientation == ORIENTATION_TRANSVERSE
+        || orientation == ORIENTATION_ROTATE_270;
+  }
+
+  /**
+   * Returns the transform that maps a stored {@code width} x {@code height} picture upright onto a
+   * {@code targetWidth} x {@code targetHeight} image, built like {@code JpegDecoder.setTransform}.
+   */
+  private static AffineTransform getTransform(
+      int orientation, int width, int height, int targetWidth, int targetHeight) {
+    // preConcatenate applies a step after the previous ones, like Matrix.postX on Android.
+    final AffineTransform transform =
+        AffineTransform.getTranslateInstance(-width / 2.0, -height / 2.0);
+    switch (orientation) {
+      case ORIENTATION_FLIP_HORIZONTAL:
+        transform.preConcatenate(AffineTransform.getScaleInstance(-1, 1));
+        break;
+      case ORIENTATION_ROTATE_180:
+        transform.preConcatenate(AffineTransform.getQuadrantRotateInstance(2));
+        break;
+      case ORIENTATION_FLIP_VERTICAL:
+        transform.preConcatenate(AffineTransform.getScaleInstance(1, -1));
+        break;
+      case ORIENTATION_TRANSPOSE:
+        transform.preConcatenate(AffineTransform.getQuadrantRotateInstance(1));
+        transform.preConcatenate(AffineTransform.getScaleInstance(-1, 1));
+        break;
+      case ORIENTATION_ROTATE_90:
+        transform.preConcatenate(AffineTransform.getQuadrantRotateInstance(1));
+        break;
+      case ORIENTATION_TRANSVERSE:
+        transform.preConcatenate(AffineTransform.getQuadrantRotateInstance(-1));
+        transform.preConcatenate(AffineTransform.getScaleInstance(-1, 1));
+        break;
+      case ORIENTATION_ROTATE_270:
+        transform.preConcatenate(AffineTransform.getQuadrantRotateInstance(-1));
+        break;
+      default:
+        break;
+    }
+    final boolean transposed = isTransposed(orientation);
+    final double uprightWidth = transposed ? height : width;
+    final double uprightHeight = transposed ? width : height;
+    transform.preConcatenate(
+        AffineTransform.getScaleInstance(targetWidth / uprightWidth, targetHeight / uprightHeight));
+    transform.preConcatenate(
+        AffineTransform.getTranslateInstance(targetWidth / 2.0, targetHeight / 2.0));
+    return transform;
+  }
+}
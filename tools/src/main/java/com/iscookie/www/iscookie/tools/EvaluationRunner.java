@@ -0,0 +1,419 @@
+package com.iscookie.www.iscookie.tools;
+
+import com.iscookie.www.iscookie.utils.ClassificationMetrics;
+import com.iscookie.www.iscookie.utils.ClassificationMetrics.Stage;
+import com.iscookie.www.iscookie.utils.LabelTable;
+import com.iscookie.www.iscookie.utils.ModelSpec;
+import com.iscookie.www.iscookie.utils.PixelPacker;
+import com.iscookie.www.iscookie.utils.TargetSpec;
+import com.iscookie.www.iscookie.utils.TopKSelector;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Classifies a directory of labeled JPEGs on the JVM and reports accuracy, throughput and latency.
+ *
+ * <p>Images are expected in one subdirectory per label, named after the label's title, for
+ * example {@code images/bagel/1.jpg}. Worker threads decode, scale and pack the images the way
+ * the app does: a {@link DesktopJpegDecoder} that mirrors the app's {@code JpegDecoder}, then
+ * {@link PixelPacker}. A single thread runs the {@link InferenceBackend} and the top-K selection,
+ * like the app's classifier.
+ *
+ * <pre>
+ * EvaluationRunner --images DIR --model mobilenet_v1_1.0_224_quant_info.txt
+ *     [--labels labels.txt] [--targets target_labels.txt] [--backend CLASS]
+ *     [--threads N] [--thresholds 0.3,0.5,0.7]
+ * </pre>
+ */
+public final class EvaluationRunner {
+
+  private static final float[] DEFAULT_THRESHOLDS = {
+    0.1f, 0.2f, 0.3f, 0.4f, 0.5f, 0.6f, 0.7f, 0.8f, 0.9f
+  };
+
+  /** The number of labels the runner ranks per image, as {@code Classifier.MAX_RESULTS}. */
+  private static final int MAX_RESULTS = 3;
+
+  /** Required by {@link TargetSpec}; the report sweeps its own thresholds instead. */
+  private static final float DEFAULT_TARGET_THRESHOLD = 0.5f;
+
+  /** A labeled image found in the image directory. */
+  private static final class Sample {
+    final File file;
+    final int expectedLabel;
+
+    Sample(File file, int expectedLabel) {
+      this.file = file;
+      this.expectedLabel = expectedLabel;
+    }
+  }
+
+  /** A sample packed into an input buffer. */
+  private static final class Prepared {
+    final Sample sample;
+    final ByteBuffer input;
+    final long startNanos;
+
+    Prepared(Sample sample, ByteBuffer input, long startNanos) {
+      this.sample = sample;
+      this.input = input;
+      this.startNanos = startNanos;
+    }
+  }
+
+  /** Per-thread preprocessing state, reused for every image the thread handles. */
+  private static final class Preprocessor {
+    final PixelPacker packer;
+    final DesktopJpegDecoder decoder;
+    final int[] pixels;
+
+    Preprocessor(ModelSpec spec, ClassificationMetrics metrics) {
+      packer =
+          spec.isQuantized()
+              ? PixelPacker.forUint8()
+              : PixelPacker.forFloat(spec.getMean(), spec.getStd());
+      decoder = new DesktopJpegDecoder(spec.getInputWidth(), spec.getInputHeight(), metrics);
+      pixels = new int[spec.getInputWidth() * spec.getInputHeight()];
+    }
+  }
+
+  private final ModelSpec spec;
+  private final LabelTable labels;
+  private final TargetSpec targetSpec;
+  private final InferenceBackend backend;
+  private final int numThreads;
+  private final ClassificationMetrics metrics = new ClassificationMetrics();
+  private final AccuracyReport report;
+
+  private int failedCount;
+
+  /**
+   * @param targetSpec The target labels, or null to skip the target columns.
+   * @param numThreads The number of threads decoding and packing images.
+   */
+  public EvaluationRunner(
+      ModelSpec spec,
+      LabelTable labels,
+      TargetSpec targetSpec,
+      InferenceBackend backend,
+      int numThreads,
+      float[] thresholds) {
+    this.spec = spec;
+    this.labels = labels;
+    this.targetSpec = targetSpec;
+    this.backend = backend;
+    this.numThreads = numThreads;
+    report = new AccuracyReport(thresholds);
+  }
+
+  public static void main(String[] args) throws Exception {
+    File images = null;
+    File modelInfo = null;
+    File labelFile = null;
+    File targetFile = null;
+    String backendClass = StandInBackend.class.getName();
+    int numThreads = Runtime.getRuntime().availableProcessors();
+    float[] thresholds = DEFAULT_THRESHOLDS;
+    try {
+      for (int i = 0; i < args.length; i += 2) {
+        if (i + 1 >= args.length) {
+          throw new IllegalArgumentException("Missing value for " + args[i]);
+        }
+        final String value = args[i + 1];
+        switch (args[i]) {
+          case "--images":
+            images = new File(value);
+            break;
+          case "--model":
+            modelInfo = new File(value);
+            break;
+          case "--labels":
+            labelFile = new File(value);
+            break;
+          case "--targets":
+            targetFile = new File(value);
+            break;
+          case "--backend":
+            backendClass = value;
+            break;
+          case "--threads":
+            numThreads = Integer.parseInt(value);
+            break;
+          case "--thresholds":
+            thresholds = parseThresholds(value);
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+      }
+      if (images == null || modelInfo == null) {
+        throw new IllegalArgumentException("--images and --model are required");
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(
+          "Usage: EvaluationRunner --images DIR --model INFO_FILE [--labels FILE]"
+              + " [--targets FILE] [--backend CLASS] [--threads N] [--thresholds T1,T2,...]");
+      System.exit(2);
+      return;
+    }
+
+    final ModelSpec spec;
+    try (FileInputStream in = new FileInputStream(modelInfo)) {
+      spec = ModelSpec.parse(modelInfo.getName(), in);
+    }
+    if (labelFile == null) {
+      labelFile = new File(modelInfo.getAbsoluteFile().getParentFile(), spec.getLabelPath());
+    }
+    final LabelTable labels = LabelTable.read(new FileInputStream(labelFile));
+    TargetSpec targetSpec = null;
+    if (targetFile != null) {
+      try (FileInputStream in = new FileInputStream(targetFile)) {
+        targetSpec =
+            TargetSpec.compile(labels, TargetSpec.readTitles(in), DEFAULT_TARGET_THRESHOLD);
+      }
+    }
+
+    try (InferenceBackend backend = openBackend(backendClass, spec, labels.size())) {
+      final EvaluationRunner runner =
+          new EvaluationRunner(spec, labels, targetSpec, backend, numThreads, thresholds);
+      System.out.println("Model: " + spec);
+      System.out.println("Backend: " + backendClass);
+      runner.run(images);
+    }
+  }
+
+  private static InferenceBackend openBackend(String className, ModelSpec spec, int numLabels)
+      throws ReflectiveOperationException {
+    return Class.forName(className)
+        .asSubclass(InferenceBackend.class)
+        .getConstructor(ModelSpec.class, int.class)
+        .newInstance(spec, numLabels);
+  }
+
+  static float[] parseThresholds(String value) {
+    final String[] parts = value.split(",");
+    final float[] thresholds = new float[parts.length];
+    for (int i = 0; i < parts.length; ++i) {
+      thresholds[i] = Float.parseFloat(parts[i].trim());
+      if (thresholds[i] < 0 || thresholds[i] > 1) {
+        throw new IllegalArgumentException("Threshold out of [0, 1]: " + parts[i]);
+      }
+    }
+    return thresholds;
+  }
+
+  /** Classifies every JPEG below {@code directory} and prints the results. */
+  public void run(File directory) throws InterruptedException {
+    final List<Sample> samples = new ArrayList<Sample>();
+    collectSamples(directory, samples);
+    if (samples.isEmpty()) {
+      System.out.println("No labeled JPEGs found in " + directory);
+      return;
+    }
+    Collections.sort(samples, (a, b) -> a.file.compareTo(b.file));
+
+    resetPeakHeap();
+    final long startNanos = System.nanoTime();
+    classify(samples);
+    final long elapsedNanos = System.nanoTime() - startNanos;
+
+    final long classified = report.getTotal();
+    System.out.println(
+        String.format(
+            Locale.US,
+            "Images: %d classified, %d failed in %.2f s, %.1f images/s with %d decode threads",
+            classified,
+            failedCount,
+            elapsedNanos / 1e9,
+            classified * 1e9 / elapsedNanos,
+            numThreads));
+    System.out.println(
+        String.format(Locale.US, "Peak heap: %.1f MB", getPeakHeapBytes() / (1024.0 * 1024.0)));
+    System.out.println("Latency:");
+    System.out.println(metrics);
+    System.out.println("Accuracy:");
+    System.out.print(report);
+  }
+
+  private void collectSamples(File directory, List<Sample> samples) {
+    final File[] children = directory.listFiles();
+    if (children == null) {
+      return;
+    }
+    final int expectedLabel = labels.indexOf(directory.getName());
+    boolean skipped = false;
+    for (final File child : children) {
+      if (child.isDirectory()) {
+        collectSamples(child, samples);
+        continue;
+      }
+      final String name = child.getName().toLowerCase(Locale.US);
+      if (!name.endsWith(".jpg") && !name.endsWith(".jpeg")) {
+        continue;
+      }
+      if (expectedLabel >= 0) {
+        samples.add(new Sample(child, expectedLabel));
+      } else if (!skipped) {
+        System.err.println(
+            "Skipping " + directory + ": no label titled \"" + directory.getName() + "\"");
+        skipped = true;
+      }
+    }
+  }
+
+  private void classify(List<Sample> samples) throws InterruptedException {
+    final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    final CompletionService<Prepared> completion =
+        new ExecutorCompletionService<Prepared>(executor);
+    // Two buffers per worker keep every worker busy while inference runs, and bound memory.
+    final int maxInFlight = 2 * numThreads;
+    final BlockingQueue<ByteBuffer> buffers = new ArrayBlockingQueue<ByteBuffer>(maxInFlight);
+    final int bufferSize =
+        spec.getInputWidth()
+            * spec.getInputHeight()
+            * 3
+            * spec.getDataType().getBytesPerChannel();
+    for (int i = 0; i < maxInFlight; ++i) {
+      buffers.add(ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.nativeOrder()));
+    }
+    final ThreadLocal<Preprocessor> preprocessors =
+        new ThreadLocal<Preprocessor>() {
+          @Override
+          protected Preprocessor initialValue() {
+            return new Preprocessor(spec, metrics);
+          }
+        };
+
+    final TopKSelector topResults = new TopKSelector(MAX_RESULTS);
+    final float[] probabilities = new float[labels.size()];
+    int submitted = 0;
+    try {
+      for (int done = 0; done < samples.size(); ++done) {
+        while (submitted < samples.size() && submitted - done < maxInFlight) {
+          final Sample sample = samples.get(submitted++);
+          completion.submit(
+              () -> {
+                final ByteBuffer input = buffers.take();
+                try {
+                  return prepare(sample, input, preprocessors.get());
+                } catch (Exception e) {
+                  buffers.add(input);
+                  throw e;
+                }
+              });
+        }
+        final Future<Prepared> future = completion.take();
+        final Prepared prepared;
+        try {
+          prepared = future.get();
+        } catch (ExecutionException e) {
+          failedCount++;
+          System.err.println("Failed to prepare an image: " + e.getCause());
+          continue;
+        }
+        try {
+          evaluate(prepared, probabilities, topResults);
+        } catch (Exception e) {
+          failedCount++;
+          System.err.println("Failed to classify " + prepared.sample.file + ": " + e);
+        } finally {
+          buffers.add(prepared.input);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Decodes, scales and packs one image on a worker thread. */
+  private Prepared prepare(Sample sample, ByteBuffer input, Preprocessor preprocessor)
+      throws IOException {
+    final long decodeStart = System.nanoTime();
+    // Records the decode and scale stages itself.
+    final BufferedImage scaled = preprocessor.decoder.decode(sample.file);
+    final long packStart = System.nanoTime();
+
+    final int width = spec.getInputWidth();
+    final int height = spec.getInputHeight();
+    scaled.getRGB(0, 0, width, height, preprocessor.pixels, 0, width);
+    input.clear();
+    preprocessor.packer.pack(preprocessor.pixels, width * height, input);
+    input.rewind();
+    metrics.record(Stage.PACK, System.nanoTime() - packStart);
+    return new Prepared(sample, input, decodeStart);
+  }
+
+  /** Runs inference and top-K on the consuming thread and adds the outcome to the report. */
+  private void evaluate(Prepared prepared, float[] probabilities, TopKSelector topResults)
+      throws Exception {
+    final long inferenceStart = System.nanoTime();
+    backend.run(prepared.input, probabilities);
+    final long topKStart = System.nanoTime();
+    metrics.record(Stage.INFERENCE, topKStart - inferenceStart);
+
+    topResults.reset();
+    topResults.offerAll(probabilities, probabilities.length);
+    topResults.finish();
+    float targetScore = 0;
+    boolean isTarget = false;
+    if (targetSpec != null) {
+      for (int label = 0; label < probabilities.length; ++label) {
+        if (targetSpec.contains(label)) {
+          targetScore += probabilities[label];
+        }
+      }
+      isTarget = targetSpec.contains(prepared.sample.expectedLabel);
+    }
+    final long endNanos = System.nanoTime();
+    metrics.record(Stage.TOP_K, endNanos - topKStart);
+    metrics.record(Stage.END_TO_END, endNanos - prepared.startNanos);
+
+    report.add(
+        prepared.sample.expectedLabel,
+        topResults.getIndex(0),
+        topResults.getScore(0),
+        isTarget,
+        targetScore);
+  }
+
+  private static void resetPeakHeap() {
+    System.gc();
+    for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+  /** Returns the sum of the heap pools' peaks, an upper bound of the peak heap use. */
+  private static long getPeakHeapBytes() {
+    long peak = 0;
+    for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+}
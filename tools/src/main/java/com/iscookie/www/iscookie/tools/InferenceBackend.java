@@ -0,0 +1,24 @@
+package com.iscookie.www.iscookie.tools;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Runs a model on one packed input.
+ *
+ * <p>Implementations are loaded by class name and need a public constructor taking the {@link
+ * com.iscookie.www.iscookie.utils.ModelSpec ModelSpec} and the number of labels. The runner calls a
+ * backend from a single thread, like the app calls its interpreter.
+ */
+public interface InferenceBackend extends AutoCloseable {
+
+  /**
+   * Classifies {@code input}.
+   *
+   * @param input One image in the model's input layout, as written by {@code PixelPacker}.
+   * @param probabilities Receives one probability per label.
+   */
+  void run(ByteBuffer input, float[] probabilities) throws Exception;
+
+  @Override
+  void close();
+}
@@ -0,0 +1,85 @@
+package com.iscookie.www.iscookie.tools;
+
+import com.iscookie.www.iscookie.utils.ModelSpec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A deterministic backend for hosts without an interpreter.
+ *
+ * <p>It averages the input over an 8x8 grid and feeds the cells through a fixed random linear
+ * layer and a softmax. The answers are meaningless, but they depend on the image and cost work
+ * per label, so the rest of the pipeline can be timed and checked end to end.
+ */
+public final class StandInBackend implements InferenceBackend {
+
+  private static final int GRID = 8;
+  private static final int NUM_CHANNELS = 3;
+  private static final int NUM_FEATURES = GRID * GRID * NUM_CHANNELS;
+
+  private final ModelSpec spec;
+  private final float[] weights;
+  private final float[] features = new float[NUM_FEATURES];
+  private final int[] cellCounts = new int[GRID * GRID];
+
+  public StandInBackend(ModelSpec spec, int numLabels) {
+    this.spec = spec;
+    weights = new float[numLabels * NUM_FEATURES];
+    final Random random = new Random(spec.getName().hashCode());
+    for (int i = 0; i < weights.length; ++i) {
+      weights[i] = (float) random.nextGaussian();
+    }
+  }
+
+  @Override
+  public void run(ByteBuffer input, float[] probabilities) {
+    final int width = spec.getInputWidth();
+    final int height = spec.getInputHeight();
+    final boolean quantized = spec.isQuantized();
+    final ByteBuffer data = input.duplicate().order(ByteOrder.nativeOrder());
+    data.rewind();
+
+    Arrays.fill(features, 0);
+    Arrays.fill(cellCounts, 0);
+    for (int y = 0; y < height; ++y) {
+      final int cellRow = y * GRID / height * GRID;
+      for (int x = 0; x < width; ++x) {
+        final int cell = cellRow + x * GRID / width;
+        cellCounts[cell]++;
+        for (int c = 0; c < NUM_CHANNELS; ++c) {
+          // Map both layouts to roughly [-1, 1].
+          final float value =
+              quantized ? ((data.get() & 0xFF) - 127.5f) / 127.5f : data.getFloat();
+          features[cell * NUM_CHANNELS + c] += value;
+        }
+      }
+    }
+    for (int i = 0; i < NUM_FEATURES; ++i) {
+      features[i] /= Math.max(1, cellCounts[i / NUM_CHANNELS]);
+    }
+
+    float max = Float.NEGATIVE_INFINITY;
+    for (int label = 0; label < probabilities.length; ++label) {
+      float logit = 0;
+      for (int i = 0, w = label * NUM_FEATURES; i < NUM_FEATURES; ++i, ++w) {
+        logit += weights[w] * features[i];
+      }
+      probabilities[label] = logit;
+      max = Math.max(max, logit);
+    }
+    float sum = 0;
+    for (int label = 0; label < probabilities.length; ++label) {
+      probabilities[label] = (float) Math.exp(probabilities[label] - max);
+      sum += probabilities[label];
+    }
+    for (int label = 0; label < probabilities.length; ++label) {
+      probabilities[label] /= sum;
+    }
+  }
+
+  @Override
+  public void close() {}
+}
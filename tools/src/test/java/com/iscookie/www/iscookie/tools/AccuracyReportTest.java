@@ -0,0 +1,49 @@
+package com.iscookie.www.iscookie.tools;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AccuracyReportTest {
+
+    private static final float EPSILON = 1e-6f;
+
+    @Test
+    public void withholdsAnswersBelowEachThreshold() {
+        final AccuracyReport report = new AccuracyReport(new float[] {0.3f, 0.6f});
+        report.add(1, 1, 0.9f, true, 0.9f);
+        report.add(2, 2, 0.4f, false, 0.1f);
+        report.add(3, 4, 0.7f, false, 0.7f);
+        report.add(1, 0, 0.2f, true, 0.4f);
+
+        assertEquals(0.75f, report.getCoverage(0), EPSILON);
+        assertEquals(2 / 3f, report.getPrecision(0), EPSILON);
+        assertEquals(0.5f, report.getAccuracy(0), EPSILON);
+        assertEquals(0.5f, report.getCoverage(1), EPSILON);
+        assertEquals(0.5f, report.getPrecision(1), EPSILON);
+        assertEquals(0.25f, report.getAccuracy(1), EPSILON);
+    }
+
+    @Test
+    public void scoresTargetDecisionsPerThreshold() {
+        final AccuracyReport report = new AccuracyReport(new float[] {0.3f, 0.6f});
+        report.add(1, 1, 0.9f, true, 0.9f);
+        report.add(2, 2, 0.4f, false, 0.1f);
+        report.add(3, 4, 0.7f, false, 0.7f);
+        report.add(1, 0, 0.2f, true, 0.4f);
+
+        assertEquals(2 / 3f, report.getTargetPrecision(0), EPSILON);
+        assertEquals(1f, report.getTargetRecall(0), EPSILON);
+        assertEquals(0.5f, report.getTargetPrecision(1), EPSILON);
+        assertEquals(0.5f, report.getTargetRecall(1), EPSILON);
+    }
+
+    @Test
+    public void reportsZeroWithoutSamples() {
+        final AccuracyReport report = new AccuracyReport(new float[] {0.5f});
+
+        assertEquals(0, report.getCoverage(0), EPSILON);
+        assertEquals(0, report.getPrecision(0), EPSILON);
+        assertEquals(0, report.getTargetRecall(0), EPSILON);
+    }
+}
@@ -0,0 +1,83 @@
+package com.iscookie.www.iscookie.tools;
+
+import com.iscookie.www.iscookie.utils.ClassificationMetrics;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DesktopJpegDecoderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void picksLargestPowerOfTwoKeepingTheTargetSize() {
+        assertEquals(8, DesktopJpegDecoder.computeSampleSize(4032, 3024, 224, 224));
+        assertEquals(2, DesktopJpegDecoder.computeSampleSize(640, 480, 224, 224));
+        assertEquals(1, DesktopJpegDecoder.computeSampleSize(300, 300, 224, 224));
+    }
+
+    @Test
+    public void readsExifOrientationAndDecodesUpright() throws IOException {
+        // Red on the left, blue on the right, stored sideways: rotating 90 degrees clockwise
+        // puts red on top.
+        final BufferedImage image = new BufferedImage(80, 40, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 40, 40);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(40, 0, 40, 40);
+        graphics.dispose();
+        final ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", jpeg);
+        final byte[] withExif = insertOrientation(jpeg.toByteArray(), 6);
+        assertEquals(
+                DesktopJpegDecoder.ORIENTATION_ROTATE_90, DesktopJpegDecoder.readOrientation(withExif));
+        assertEquals(
+                DesktopJpegDecoder.ORIENTATION_NORMAL,
+                DesktopJpegDecoder.readOrientation(jpeg.toByteArray()));
+
+        final File file = folder.newFile("sideways.jpg");
+        Files.write(file.toPath(), withExif);
+        final DesktopJpegDecoder decoder = new DesktopJpegDecoder(10, 20, new ClassificationMetrics());
+        final BufferedImage upright = decoder.decode(file);
+
+        // The stored 80x40 picture only has to stay 20x10 before it is turned upright.
+        assertEquals(4, decoder.getLastSampleSize());
+        final Color top = new Color(upright.getRGB(5, 2));
+        final Color bottom = new Color(upright.getRGB(5, 17));
+        assertTrue("top " + top, top.getRed() > 200 && top.getBlue() < 60);
+        assertTrue("bottom " + bottom, bottom.getBlue() > 200 && bottom.getRed() < 60);
+    }
+
+    /** Inserts a big-endian EXIF segment with only an orientation tag right after the SOI marker. */
+    private static byte[] insertOrientation(byte[] jpeg, int orientation) {
+        final byte[] app1 = {
+            (byte) 0xff, (byte) 0xe1, 0, 34,
+            'E', 'x', 'i', 'f', 0, 0,
+            'M', 'M', 0, 42, 0, 0, 0, 8,
+            0, 1,
+            0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, (byte) orientation, 0, 0,
+            0, 0, 0, 0
+        };
+        final byte[] result = new byte[jpeg.length + app1.length];
+        System.arraycopy(jpeg, 0, result, 0, 2);
+        System.arraycopy(app1, 0, result, 2, app1.length);
+        System.arraycopy(jpeg, 2, result, 2 + app1.length, jpeg.length - 2);
+        return result;
+    }
+}